@@ -0,0 +1,248 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.AsyncDatabaseService;
+import ac.il.bgu.qa.services.AsyncNotificationService;
+import ac.il.bgu.qa.services.AsyncReviewService;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * A non-blocking counterpart of {@link Library} for the borrow, return and review notification flows.
+ * <p>
+ * Every method returns at once. Its stage completes when the flow is done, or exceptionally with the exception
+ * the same {@link Library} method would throw, checked in the same order. Exceptions raised by a later stage
+ * of a flow reach the caller wrapped in a {@link CompletionException}, as usual for {@link CompletableFuture}.
+ * <p>
+ * No thread waits while a service call is in flight, so the number of concurrent requests is bounded by the
+ * services rather than by a thread per request. The library takes no locks of its own: loans are decided by
+ * the single atomic {@link AsyncDatabaseService#tryBorrow(String, String)} and
+ * {@link AsyncDatabaseService#tryReturn(String)} calls. Since many flows share the review service at once,
+ * the library never closes it; its owner closes it.
+ */
+public class AsyncLibrary {
+
+    // Service to interact with the database
+    private final AsyncDatabaseService databaseService;
+
+    // Service to fetch reviews for a book
+    private final AsyncReviewService reviewService;
+
+    // Executor to notify users whose notification service only blocks
+    private final Executor executor;
+
+    /**
+     * Constructs a library over non-blocking services.
+     *
+     * @param databaseService Service to interact with the database.
+     * @param reviewService   Service to fetch reviews for a book.
+     * @param executor        Executor to run blocking notification services on.
+     */
+    public AsyncLibrary(AsyncDatabaseService databaseService, AsyncReviewService reviewService, Executor executor) {
+        this.databaseService = databaseService;
+        this.reviewService = reviewService;
+        this.executor = executor;
+    }
+
+    /**
+     * Constructs a library over blocking services, running their calls on an executor so that callers never block.
+     * {@link RequestExecutors#newPerRequestExecutor(int)} gives each call a virtual thread where the runtime has them.
+     *
+     * @param databaseService Service to interact with the database.
+     * @param reviewService   Service to fetch reviews for a book.
+     * @param executor        Executor to run the blocking calls on.
+     */
+    public AsyncLibrary(DatabaseService databaseService, ReviewService reviewService, Executor executor) {
+        this(AsyncDatabaseService.of(databaseService, executor), AsyncReviewService.of(reviewService, executor), executor);
+    }
+
+    /**
+     * Borrows a book for a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return A stage completing once the book is borrowed.
+     */
+    public CompletionStage<Void> borrowBook(String ISBN, String userId) {
+        // Validate the ISBN. If it's invalid, fail.
+        if (!IsbnCodec.isValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        }
+
+        // Validate the user Id's format (should be a 12-digit number).
+        // If it's invalid, fail, but only once the book is known to exist.
+        if (!UserId.isValid(userId)) {
+            return databaseService.loadContext(ISBN, null).thenAccept(context -> {
+                if (context.getBook() == null) {
+                    throw new BookNotFoundException("Book not found!");
+                }
+                throw new IllegalArgumentException("Invalid user Id.");
+            });
+        }
+
+        // Check the book and the user and record the loan in one atomic database operation.
+        return databaseService.tryBorrow(ISBN, userId).thenAccept(result -> {
+            switch (result) {
+                case BOOK_NOT_FOUND:
+                    throw new BookNotFoundException("Book not found!");
+                case USER_NOT_REGISTERED:
+                    throw new UserNotRegisteredException("User not found!");
+                case ALREADY_BORROWED:
+                    throw new BookAlreadyBorrowedException("Book is already borrowed!");
+                default:
+            }
+        });
+    }
+
+    /**
+     * Returns a previously borrowed book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return A stage completing once the book is returned.
+     */
+    public CompletionStage<Void> returnBook(String ISBN) {
+        // Validate the ISBN. If it's not valid, fail.
+        if (!IsbnCodec.isValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        }
+
+        // Check the book and clear the loan in one atomic database operation.
+        return databaseService.tryReturn(ISBN).thenAccept(result -> {
+            switch (result) {
+                case BOOK_NOT_FOUND:
+                    throw new BookNotFoundException("Book not found!");
+                case NOT_BORROWED:
+                    throw new BookNotBorrowedException("Book wasn't borrowed!");
+                default:
+            }
+        });
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A stage completing once the user is notified.
+     */
+    public CompletionStage<Void> notifyUserWithBookReviews(String ISBN, String userId) {
+        // Validate the ISBN and the user Id. If either is invalid, fail.
+        if (!IsbnCodec.isValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        }
+        if (!UserId.isValid(userId)) {
+            return failed(new IllegalArgumentException("Invalid user Id."));
+        }
+
+        // Retrieve the book and the user, then the reviews, then send them.
+        return databaseService.loadContext(ISBN, userId).thenCompose(context -> {
+            Book book = context.getBook();
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+            User user = context.getUser();
+            if (user == null) {
+                throw new UserNotRegisteredException("User not found!");
+            }
+            return fetchReviews(ISBN).thenCompose(reviews -> {
+                String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
+                AsyncNotificationService notificationService =
+                        AsyncNotificationService.of(user.getNotificationService(), executor);
+                return sendNotification(notificationService, user.getId(), notificationMessage, 0);
+            });
+        });
+    }
+
+    /**
+     * Fetches a book by its ISBN and notifies the user with its reviews.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return A stage completing with the book once the notification was attempted.
+     */
+    public CompletionStage<Book> getBookByISBN(String ISBN, String userId) {
+        // Validate the ISBN and the user Id. If either is invalid, fail.
+        if (!IsbnCodec.isValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        }
+        if (!UserId.isValid(userId)) {
+            return failed(new IllegalArgumentException("Invalid user Id."));
+        }
+
+        return databaseService.getBookByISBN(ISBN).thenCompose(book -> {
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+            if (book.isBorrowed()) {
+                throw new BookAlreadyBorrowedException("Book was already borrowed!");
+            }
+
+            // The notification is optional, so even if it fails, the book is still returned.
+            return notifyUserWithBookReviews(ISBN, userId).handle((ignored, failure) -> {
+                if (failure != null) {
+                    System.out.println("Notification failed!");
+                }
+                return book;
+            });
+        });
+    }
+
+    // Fetches the reviews of a book, leaving the review service open for the flows still using it.
+    private CompletionStage<List<String>> fetchReviews(String ISBN) {
+        CompletionStage<List<String>> fetch;
+        try {
+            fetch = reviewService.getReviewsForBook(ISBN);
+        } catch (ReviewException e) {
+            fetch = failed(e);
+        }
+        return fetch.handle((reviews, failure) -> {
+            if (failure != null) {
+                if (unwrap(failure) instanceof ReviewException) {
+                    throw new ReviewServiceUnavailableException("Review service unavailable!");
+                }
+                throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+            }
+            if (reviews == null || reviews.isEmpty()) {
+                throw new NoReviewsFoundException("No reviews found!");
+            }
+            return reviews;
+        });
+    }
+
+    // Sends a notification, retrying up to 5 times in all if it fails.
+    private CompletionStage<Void> sendNotification(AsyncNotificationService notificationService, String userId,
+                                                   String message, int retryCount) {
+        return notificationService.notifyUserAsync(userId, message)
+                .handle((ignored, failure) -> failure)
+                .thenCompose(failure -> {
+                    if (failure == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (!(unwrap(failure) instanceof NotificationException)) {
+                        return failed(unwrap(failure));
+                    }
+                    int retries = retryCount + 1;
+                    System.err.println("Notification failed! Retrying attempt " + retries + "/5");
+                    if (retries == 5) {
+                        return failed(new NotificationException("Notification failed!"));
+                    }
+                    return sendNotification(notificationService, userId, message, retries);
+                });
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+}
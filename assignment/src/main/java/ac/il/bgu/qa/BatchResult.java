@@ -0,0 +1,101 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the outcome of a bulk library operation, item by item.
+ *
+ * @param <T> The type of the items in the batch.
+ */
+public class BatchResult<T> {
+
+    // The items that were applied, in the order they were given.
+    private final List<T> succeeded = new ArrayList<>();
+
+    // The items that were rejected, in the order they were given, each with its position and exception.
+    private final List<Failure<T>> failures = new ArrayList<>();
+
+    void succeeded(T item) {
+        succeeded.add(item);
+    }
+
+    void failed(int index, T item, RuntimeException exception) {
+        failures.add(new Failure<>(index, item, exception));
+    }
+
+    /**
+     * Retrieves the items that were applied.
+     *
+     * @return The applied items, in the order they were given.
+     */
+    public List<T> getSucceeded() {
+        return Collections.unmodifiableList(succeeded);
+    }
+
+    /**
+     * Retrieves the items that were rejected. Equal items, and null items, are reported once per position.
+     *
+     * @return The rejected items, sorted by their position in the batch.
+     */
+    public List<Failure<T>> getFailures() {
+        List<Failure<T>> sorted = new ArrayList<>(failures);
+        sorted.sort((first, second) -> Integer.compare(first.getIndex(), second.getIndex()));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Checks if every item of the batch was applied.
+     *
+     * @return true if no item was rejected, otherwise false.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Represents an item of a batch that was rejected.
+     *
+     * @param <T> The type of the item.
+     */
+    public static final class Failure<T> {
+
+        private final int index;
+        private final T item;
+        private final RuntimeException exception;
+
+        Failure(int index, T item, RuntimeException exception) {
+            this.index = index;
+            this.item = item;
+            this.exception = exception;
+        }
+
+        /**
+         * Retrieves the position of the item in the batch.
+         *
+         * @return The index of the item, counting from 0.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Retrieves the rejected item.
+         *
+         * @return The item, possibly null.
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Retrieves the exception the single-item operation would have thrown.
+         *
+         * @return The exception that rejected the item.
+         */
+        public RuntimeException getException() {
+            return exception;
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Represents a book with its essential details and borrowing status.
+ * The borrowing status may be read and changed from several threads: of concurrent
+ * {@link #borrow()} calls on an available book exactly one succeeds, and likewise for {@link #returnBook()}.
  */
 public class Book {
+    // Values of the borrowing status, changed atomically by compare-and-set.
+    private static final int AVAILABLE = 0;
+    private static final int BORROWED = 1;
+    private static final AtomicIntegerFieldUpdater<Book> BORROWED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "borrowState");
+
     // The International Standard Book Number (ISBN) uniquely identifying the book.
     private final String ISBN;
     // The title of the book.
     private final String title;
     // The name of the author of the book.
     private final String author;
-    // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // Status to check if the book is currently borrowed or not, AVAILABLE or BORROWED.
+    private volatile int borrowState;
 
     /**
      * Constructs a new Book object.
@@ -24,7 +34,7 @@ public class Book {
         this.ISBN = ISBN;
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
+        this.borrowState = AVAILABLE;
     }
 
     // Getter methods
@@ -62,7 +72,7 @@ public class Book {
      * @return true if the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return borrowState == BORROWED;
     }
 
     /**
@@ -70,9 +80,7 @@ public class Book {
      * Throws an exception if the book is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        if (!BORROWED_UPDATER.compareAndSet(this, AVAILABLE, BORROWED)) {
             throw new IllegalStateException("Book is already borrowed!");
         }
     }
@@ -82,9 +90,7 @@ public class Book {
      * Throws an exception if the book was not previously borrowed.
      */
     public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+        if (!BORROWED_UPDATER.compareAndSet(this, BORROWED, AVAILABLE)) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
     }
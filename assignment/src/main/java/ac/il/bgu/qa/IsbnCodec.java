@@ -0,0 +1,140 @@
+package ac.il.bgu.qa;
+
+/**
+ * Validates, normalizes and checksums ISBN-13 values.
+ * All checks run in a single pass straight over the given characters and do not allocate,
+ * so they are safe to call on every library operation.
+ * Hyphens are ignored wherever they appear, every other character has to be an ASCII digit.
+ */
+public final class IsbnCodec {
+
+    // Returned by pack when the input is not a valid ISBN-13.
+    public static final long INVALID = -1L;
+
+    // Number of digits in an ISBN-13.
+    public static final int LENGTH = 13;
+
+    private IsbnCodec() {
+    }
+
+    /**
+     * Validates if input is of type ISBN-13.
+     *
+     * @param isbn The International Standard Book Number to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(CharSequence isbn) {
+        return pack(isbn) != INVALID;
+    }
+
+    /**
+     * Validates an ISBN-13 and packs its 13 digits into a single long.
+     *
+     * @param isbn The International Standard Book Number, with or without hyphens.
+     * @return The numeric value of the 13 digits, or {@link #INVALID} if the ISBN is not valid.
+     */
+    public static long pack(CharSequence isbn) {
+        // Check if the ISBN is null, it is never valid
+        if (isbn == null) {
+            return INVALID;
+        }
+
+        // Walk the characters once, skipping hyphens, while accumulating both
+        // the numeric value and the ISBN-13 weighted sum of the first 12 digits:
+        // Odd position numbers are multiplied by 1
+        // Even position numbers are multiplied by 3
+        int digits = 0;
+        int sum = 0;
+        long value = 0;
+        for (int i = 0, n = isbn.length(); i < n; i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == LENGTH) {
+                return INVALID;
+            }
+            int digit = c - '0';
+            if (digits < LENGTH - 1) {
+                sum += (digits & 1) == 0 ? digit : digit * 3;
+            }
+            value = value * 10 + digit;
+            digits++;
+        }
+
+        if (digits != LENGTH) {
+            return INVALID;
+        }
+
+        // Check if the calculated check digit matches the last digit of the ISBN
+        return checkDigitOf(sum) == (int) (value % 10) ? value : INVALID;
+    }
+
+    /**
+     * Calculates the ISBN-13 check digit of the first 12 digits of the given input.
+     * The input may hold either the 12 leading digits or a full 13 digit ISBN, hyphens are ignored.
+     *
+     * @param isbn The digits to checksum.
+     * @return The check digit, or -1 if the input is not made of 12 or 13 digits.
+     */
+    public static int checkDigit(CharSequence isbn) {
+        if (isbn == null) {
+            return -1;
+        }
+
+        int digits = 0;
+        int sum = 0;
+        for (int i = 0, n = isbn.length(); i < n; i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == LENGTH) {
+                return -1;
+            }
+            if (digits < LENGTH - 1) {
+                int digit = c - '0';
+                sum += (digits & 1) == 0 ? digit : digit * 3;
+            }
+            digits++;
+        }
+
+        return digits == LENGTH - 1 || digits == LENGTH ? checkDigitOf(sum) : -1;
+    }
+
+    /**
+     * Normalizes an ISBN-13 to its 13 digits without hyphens.
+     * Unlike the other methods this one allocates the returned string.
+     *
+     * @param isbn The International Standard Book Number to normalize.
+     * @return The 13 digit form of the ISBN, or null if the ISBN is not valid.
+     */
+    public static String normalize(CharSequence isbn) {
+        long packed = pack(isbn);
+        return packed == INVALID ? null : format(packed);
+    }
+
+    /**
+     * Formats a packed ISBN-13 back to its 13 digit string form, keeping leading zeros.
+     *
+     * @param packed A value previously returned by {@link #pack(CharSequence)}.
+     * @return The 13 digit form of the ISBN.
+     */
+    public static String format(long packed) {
+        if (packed < 0 || packed > 9_999_999_999_999L) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + packed % 10);
+            packed /= 10;
+        }
+        return new String(chars);
+    }
+
+    // Turns the weighted sum of the first 12 digits into the check digit.
+    private static int checkDigitOf(int sum) {
+        int checkDigit = 10 - (sum % 10);
+        return checkDigit == 10 ? 0 : checkDigit;
+    }
+}
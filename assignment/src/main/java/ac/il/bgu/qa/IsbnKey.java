@@ -0,0 +1,78 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents a normalized ISBN-13 packed into a single long.
+ * Two spellings of the same ISBN, with or without hyphens, give equal keys.
+ */
+public final class IsbnKey implements Comparable<IsbnKey> {
+
+    // The 13 digits of the ISBN as a number.
+    private final long value;
+
+    private IsbnKey(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Creates a key from an ISBN-13 in any hyphenation.
+     *
+     * @param isbn The International Standard Book Number.
+     * @return The key of the ISBN.
+     * @throws IllegalArgumentException If the ISBN is not a valid ISBN-13.
+     */
+    public static IsbnKey of(CharSequence isbn) {
+        long packed = IsbnCodec.pack(isbn);
+        if (packed == IsbnCodec.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return new IsbnKey(packed);
+    }
+
+    /**
+     * Creates a key from an already packed ISBN-13.
+     *
+     * @param packed A value returned by {@link IsbnCodec#pack(CharSequence)} or {@link #toLong()}.
+     * @return The key of the ISBN.
+     * @throws IllegalArgumentException If the value does not hold a valid ISBN-13.
+     */
+    public static IsbnKey valueOf(long packed) {
+        if (packed < 0 || IsbnCodec.checkDigit(IsbnCodec.format(packed)) != (int) (packed % 10)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return new IsbnKey(packed);
+    }
+
+    /**
+     * Retrieves the packed form of the ISBN.
+     *
+     * @return The 13 digits of the ISBN as a long.
+     */
+    public long toLong() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(IsbnKey other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof IsbnKey && ((IsbnKey) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    /**
+     * Retrieves the normalized form of the ISBN.
+     *
+     * @return The 13 digits of the ISBN without hyphens.
+     */
+    @Override
+    public String toString() {
+        return IsbnCodec.format(value);
+    }
+}
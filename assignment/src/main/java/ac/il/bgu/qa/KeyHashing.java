@@ -0,0 +1,26 @@
+package ac.il.bgu.qa;
+
+/**
+ * Hashing helpers shared by the hash tables, locks and filters keyed by packed ISBNs or numeric user Ids.
+ */
+public final class KeyHashing {
+
+    private KeyHashing() {
+    }
+
+    /**
+     * Spreads the bits of a key so that consecutive ISBNs or user Ids do not cluster.
+     * Every bit of the result depends on every bit of the key, so any slice of it may be used as a hash.
+     *
+     * @param key The packed ISBN or numeric user Id.
+     * @return A well mixed hash of the key.
+     */
+    public static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
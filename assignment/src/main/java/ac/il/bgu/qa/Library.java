@@ -1,26 +1,76 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.index.IsbnRangeIndex;
+import ac.il.bgu.qa.services.BookContext;
+import ac.il.bgu.qa.services.CatalogIndex;
+import ac.il.bgu.qa.services.CatalogScan;
 import ac.il.bgu.qa.services.DatabaseService;
 import ac.il.bgu.qa.services.ReviewService;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
 
 /**
  * Represents a library which manages a collection of books and users.
+ * Lookups of the catalog by author, title, loan or ISBN range, and paged listings, need a {@link CatalogIndex};
+ * full scans need a {@link CatalogScan}. Without one they raise an {@link UnsupportedOperationException}.
  */
 public class Library {
 
+    // The lowest and the highest valid ISBN-13, bounding a listing of the whole catalog
+    private static final String FIRST_ISBN = "0000000000000";
+    private static final String LAST_ISBN = "9999999999994";
+
     // Service to interact with the database
     private final DatabaseService databaseService;
 
     // Service to fetch reviews for a book
     private final ReviewService reviewService;
 
+    // Lookups by author, title, loan and ISBN range, and full scans, or null when the database has none
+    private final CatalogIndex catalogIndex;
+    private final CatalogScan catalogScan;
+
+    // Locks serializing changes to the same book, or null when the database service is trusted to do so
+    private final StripedLock locks;
+
+    // Executor fetching reviews while the database lookups run, or null to fetch them afterwards
+    private final Executor reviewExecutor;
+
+    // Executor sending the review notifications of getBookByISBN, or null to send them before returning
+    private final Executor notificationExecutor;
+
     // Constructor for Library, initializes both services
     public Library(DatabaseService databaseService, ReviewService reviewService) {
+        this(databaseService, reviewService, new Options());
+    }
+
+    /**
+     * Constructs a library with optional collaborators.
+     *
+     * @param databaseService Service to interact with the database.
+     * @param reviewService   Service to fetch reviews for a book.
+     * @param options         The optional collaborators of the library.
+     */
+    public Library(DatabaseService databaseService, ReviewService reviewService, Options options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Invalid options.");
+        }
         this.databaseService = databaseService;
         this.reviewService = reviewService;
+        this.catalogIndex = options.catalogIndex != null ? options.catalogIndex : CatalogIndex.find(databaseService);
+        CatalogScan scan = CatalogScan.find(databaseService);
+        this.catalogScan = scan == null && this.catalogIndex instanceof CatalogScan
+                ? (CatalogScan) this.catalogIndex : scan;
+        this.locks = options.locks;
+        this.reviewExecutor = options.reviewExecutor;
+        this.notificationExecutor = options.notificationExecutor;
     }
 
     /**
@@ -30,9 +80,104 @@ public class Library {
      */
     public void addBook(Book book) {
         // Multiple checks to validate the book object's properties
+        validateBook(book);
+
+        // Serialize with other changes to the same book, if the library takes locks.
+        Lock lock = lock(book.getISBN());
+        try {
+            // If book already exists in the database, throw exception
+            if (databaseService.getBookByISBN(book.getISBN()) != null)
+                throw new IllegalArgumentException("Book already exists.");
+
+            // If all checks pass, add the book to the database
+            databaseService.addBook(book.getISBN(), book);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Adds several books to the library's collection, for example during a catalog import.
+     * Every book is validated as in {@link #addBook(Book)}, but an invalid book does not stop the others:
+     * the existence check and the insertion are each done with one call to the database for the whole batch.
+     * If the library takes locks, the locks of every ISBN of the batch are held from the check to the insertion.
+     *
+     * @param books The books to be added.
+     * @return The books that were added, and the exception that rejected each of the others.
+     */
+    public BatchResult<Book> addBooks(Collection<Book> books) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid books.");
+        }
+        BatchResult<Book> result = new BatchResult<>();
+
+        // Validate every book on its own, and reject repeated ISBNs within the batch,
+        // whatever their hyphenation.
+        Map<String, Book> candidates = new LinkedHashMap<>();
+        Map<String, Integer> positions = new HashMap<>();
+        Set<Long> seen = new LinkedHashSet<>();
+        int index = 0;
+        for (Book book : books) {
+            try {
+                validateBook(book);
+                if (!seen.add(IsbnCodec.pack(book.getISBN())))
+                    throw new IllegalArgumentException("Book already exists.");
+                candidates.put(book.getISBN(), book);
+                positions.put(book.getISBN(), index);
+            } catch (IllegalArgumentException e) {
+                result.failed(index, book, e);
+            }
+            index++;
+        }
+        if (candidates.isEmpty()) {
+            return result;
+        }
+
+        // Serialize with other changes to the same books, if the library takes locks.
+        List<Lock> held = locks == null ? Collections.<Lock>emptyList() : locks.lockAll(seen);
+        try {
+            // Drop the books that already exist in the database.
+            Map<String, Book> existing = databaseService.getBooksByISBN(candidates.keySet());
+            Iterator<Map.Entry<String, Book>> iterator = candidates.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Book> entry = iterator.next();
+                if (existing.get(entry.getKey()) != null) {
+                    result.failed(positions.get(entry.getKey()), entry.getValue(),
+                            new IllegalArgumentException("Book already exists."));
+                    iterator.remove();
+                }
+            }
+
+            // Add the rest in one call, collecting the books the database itself rejects.
+            Map<String, RuntimeException> rejected = candidates.isEmpty()
+                    ? Collections.<String, RuntimeException>emptyMap()
+                    : databaseService.addBooks(candidates);
+            for (Map.Entry<String, Book> entry : candidates.entrySet()) {
+                RuntimeException failure = rejected.get(entry.getKey());
+                if (failure == null) {
+                    result.succeeded(entry.getValue());
+                } else {
+                    result.failed(positions.get(entry.getKey()), entry.getValue(), failure);
+                }
+            }
+        } finally {
+            for (Lock lock : held) {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validates the properties of a book to be added.
+     *
+     * @param book The book to be validated.
+     * @throws IllegalArgumentException If any property of the book is invalid.
+     */
+    private void validateBook(Book book) {
         if (book == null) {
             throw new IllegalArgumentException("Invalid book.");
-        } else if (!isISBNValid(book.getISBN())){
+        } else if (!IsbnCodec.isValid(book.getISBN())){
             throw new IllegalArgumentException("Invalid ISBN.");
         } else if (book.getTitle() == null || book.getTitle().equals("")) {
             throw new IllegalArgumentException("Invalid title.");
@@ -41,56 +186,56 @@ public class Library {
         } else if (book.isBorrowed()) {
             throw new IllegalArgumentException("Book with invalid borrowed state.");
         }
-
-        // If book already exists in the database, throw exception
-        if (databaseService.getBookByISBN(book.getISBN()) != null)
-            throw new IllegalArgumentException("Book already exists.");
-
-        // If all checks pass, add the book to the database
-        databaseService.addBook(book.getISBN(), book);
     }
 
     /**
-     *  Validates if input is of type ISBN-13.
+     * Fetches every book by an author. The name is matched ignoring case and the punctuation between its parts,
+     * so "J.R.R. Tolkien" also finds the books of "j. r. r. tolkien".
      *
-     *  @param isbn The International Standard Book Number to be validated.
-     *  @return true if valid, false otherwise.
-    */
-    private boolean isISBNValid(String isbn) {
-        // Check if the ISBN is null, return false if it is
-        if (isbn == null) {
-            return false;
+     * @param author The name of the author.
+     * @return The books by the author, in ascending order of ISBN.
+     */
+    public List<Book> getBooksByAuthor(String author) {
+        // Validate the author's name. If it's invalid, throw an exception.
+        if (!isAuthorValid(author)) {
+            throw new IllegalArgumentException("Invalid author.");
         }
 
-        // Remove any hyphen characters from the ISBN for standardization
-        isbn = isbn.replaceAll("-", "");
+        return catalogIndex().getBooksByAuthor(author);
+    }
 
-        // Check if the sanitized ISBN is of length 13 and if contains only digits
-        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
-            return false;
+    /**
+     * Fetches every book with a title. The title is matched ignoring case and punctuation.
+     *
+     * @param title The title of the book.
+     * @return The books with the title, in ascending order of ISBN.
+     */
+    public List<Book> getBooksByTitle(String title) {
+        // Validate the title. If it's invalid, throw an exception.
+        if (title == null || title.equals("")) {
+            throw new IllegalArgumentException("Invalid title.");
         }
 
-        // Calculate the sum based on the ISBN-13 rules:
-        // Odd position numbers are multiplied by 1
-        // Even position numbers are multiplied by 3
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
-            if (i % 2 == 0) {
-                sum += digit;
-            } else {
-                sum += digit * 3;
-            }
-        }
+        return catalogIndex().getBooksByTitle(title);
+    }
 
-        // Calculate the check digit
-        int checkDigit = 10 - (sum % 10);
-        if (checkDigit == 10) {
-            checkDigit = 0;
+    /**
+     * Searches the titles and authors of the catalog for words or parts of words, such as "hobb tolkien".
+     *
+     * @param query The words to look for.
+     * @param limit The largest number of books to return.
+     * @return The matching books, most relevant first.
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        // Validate the query and the limit. If either is invalid, throw an exception.
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid query.");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
         }
 
-        // Check if the calculated check digit matches the last digit of the ISBN
-        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+        return catalogIndex().searchBooks(query, limit);
     }
 
     /**
@@ -146,23 +291,94 @@ public class Library {
      */
     public void registerUser(User user) {
         // Multiple checks to validate the user object's properties.
+        validateUser(user);
+
+        // Before registering, check if a user with the given Id already exists.
+        // If such a user is found, throw an exception.
+        if (databaseService.getUserById(UserId.parse(user.getId())) != null)
+            throw new IllegalArgumentException("User already exists.");
+
+        // If all checks have passed, call the database service to register the user.
+        databaseService.registerUser(user.getId(), user);
+    }
+
+    /**
+     * Registers several users with the library.
+     * Every user is validated as in {@link #registerUser(User)}, but an invalid user does not stop the others:
+     * the existence check and the registration are each done with one call to the database for the whole batch.
+     *
+     * @param users The users to be registered.
+     * @return The users that were registered, and the exception that rejected each of the others.
+     */
+    public BatchResult<User> registerUsers(Collection<User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Invalid users.");
+        }
+        BatchResult<User> result = new BatchResult<>();
+
+        // Validate every user on its own, and reject repeated Ids within the batch.
+        Map<String, User> candidates = new LinkedHashMap<>();
+        Map<String, Integer> positions = new HashMap<>();
+        int index = 0;
+        for (User user : users) {
+            try {
+                validateUser(user);
+                if (candidates.containsKey(user.getId()))
+                    throw new IllegalArgumentException("User already exists.");
+                candidates.put(user.getId(), user);
+                positions.put(user.getId(), index);
+            } catch (IllegalArgumentException e) {
+                result.failed(index, user, e);
+            }
+            index++;
+        }
+        if (candidates.isEmpty()) {
+            return result;
+        }
+
+        // Drop the users that are already registered.
+        Map<String, User> existing = databaseService.getUsersById(candidates.keySet());
+        Iterator<Map.Entry<String, User>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, User> entry = iterator.next();
+            if (existing.get(entry.getKey()) != null) {
+                result.failed(positions.get(entry.getKey()), entry.getValue(),
+                        new IllegalArgumentException("User already exists."));
+                iterator.remove();
+            }
+        }
+
+        // Register the rest in one call, collecting the users the database itself rejects.
+        Map<String, RuntimeException> rejected = candidates.isEmpty()
+                ? Collections.<String, RuntimeException>emptyMap()
+                : databaseService.registerUsers(candidates);
+        for (Map.Entry<String, User> entry : candidates.entrySet()) {
+            RuntimeException failure = rejected.get(entry.getKey());
+            if (failure == null) {
+                result.succeeded(entry.getValue());
+            } else {
+                result.failed(positions.get(entry.getKey()), entry.getValue(), failure);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validates the properties of a user to be registered.
+     *
+     * @param user The user to be validated.
+     * @throws IllegalArgumentException If any property of the user is invalid.
+     */
+    private void validateUser(User user) {
         if (user == null) {
             throw new IllegalArgumentException("Invalid user.");
-        } else if (user.getId() == null || !user.getId().matches("\\d{12}")) {
+        } else if (!UserId.isValid(user.getId())) {
             throw new IllegalArgumentException("Invalid user Id.");
         } else if (user.getName() == null || user.getName().equals("")) {
             throw new IllegalArgumentException("Invalid user name.");
         } else if (user.getNotificationService() == null) {
             throw new IllegalArgumentException("Invalid notification service.");
         }
-
-        // Before registering, check if a user with the given Id already exists.
-        // If such a user is found, throw an exception.
-        if (databaseService.getUserById(user.getId()) != null)
-            throw new IllegalArgumentException("User already exists.");
-
-        // If all checks have passed, call the database service to register the user.
-        databaseService.registerUser(user.getId(), user);
     }
 
 
@@ -175,73 +391,243 @@ public class Library {
     public void borrowBook(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        if (!IsbnCodec.isValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        // Serialize with other changes to the same book, if the library takes locks.
+        Lock lock = lock(ISBN);
+        try {
+            // Validate the user Id's format (should be a 12-digit number).
+            // If it's invalid, throw an exception, but only once the book is known to exist.
+            if (!UserId.isValid(userId)) {
+                if (databaseService.loadContext(ISBN, null).getBook() == null) {
+                    throw new BookNotFoundException("Book not found!");
+                }
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
 
-        // If no book is found for the given ISBN, throw an exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            // Check that the book exists, that the user is registered and that the book is not on loan,
+            // then mark the book as borrowed and record the loan, all in one atomic database operation.
+            switch (databaseService.tryBorrow(ISBN, userId)) {
+                // If no book is found for the given ISBN, throw an exception.
+                case BOOK_NOT_FOUND:
+                    throw new BookNotFoundException("Book not found!");
+                // If the user Id doesn't correspond to a registered user, throw an exception.
+                case USER_NOT_REGISTERED:
+                    throw new UserNotRegisteredException("User not found!");
+                // If the book is already borrowed, throw an exception.
+                case ALREADY_BORROWED:
+                    throw new BookAlreadyBorrowedException("Book is already borrowed!");
+                default:
+            }
+        } finally {
+            unlock(lock);
         }
+    }
 
-        // Validate the user Id's format (should be a 12-digit number).
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+    /**
+     * Returns a previously borrowed book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void returnBook(String ISBN) {
+        
+        // Validate the ISBN. If it's not valid, throw an exception.
+        if (!IsbnCodec.isValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
         }
 
-        // Check if the user Id's corresponds to a registered user in the database.
-        // If not, throw an exception indicating the user is not registered.
-        if (databaseService.getUserById(userId) == null) {
-            throw new UserNotRegisteredException("User not found!");
+        // Serialize with other changes to the same book, if the library takes locks.
+        Lock lock = lock(ISBN);
+        try {
+            // Check that the book exists and is on loan, then mark the book as not borrowed
+            // and clear the loan, all in one atomic database operation.
+            switch (databaseService.tryReturn(ISBN)) {
+                // If no book is found for the given ISBN, throw a book not found exception.
+                case BOOK_NOT_FOUND:
+                    throw new BookNotFoundException("Book not found!");
+                // If the book is not on loan, it was never borrowed or it has already been returned,
+                // therefore throw an exception.
+                case NOT_BORROWED:
+                    throw new BookNotBorrowedException("Book wasn't borrowed!");
+                default:
+            }
+        } finally {
+            unlock(lock);
         }
+    }
 
-        // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+    /**
+     * Acquires the lock of the stripe guarding an ISBN, if the library was given locks.
+     *
+     * @param ISBN A valid International Standard Book Number.
+     * @return The acquired lock, or null if the library takes no locks.
+     */
+    private Lock lock(String ISBN) {
+        return locks == null ? null : locks.lock(IsbnCodec.pack(ISBN));
+    }
+
+    private static void unlock(Lock lock) {
+        if (lock != null) {
+            lock.unlock();
         }
+    }
 
-        // Mark the book as borrowed.
-        book.borrow();
+    // Retrieves the index of the catalog, failing if the library has none.
+    private CatalogIndex catalogIndex() {
+        if (catalogIndex == null) {
+            throw new UnsupportedOperationException("Catalog lookups are not supported.");
+        }
+        return catalogIndex;
+    }
 
-        // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
-        databaseService.borrowBook(ISBN, userId);
+    // Retrieves the scans of the catalog, failing if the library has none.
+    private CatalogScan catalogScan() {
+        if (catalogScan == null) {
+            throw new UnsupportedOperationException("Catalog scans are not supported.");
+        }
+        return catalogScan;
     }
 
     /**
-     * Returns a previously borrowed book.
+     * Streams the books whose ISBN starts with a prefix, for example every title of a publisher.
+     * The books are fetched lazily as the stream is consumed, so the result is never held in memory at once.
      *
-     * @param ISBN The International Standard Book Number of the book.
+     * @param prefix The leading digits of the ISBNs, hyphens allowed, for example "978-0-306".
+     * @return The books starting with the prefix, in ascending order of ISBN.
      */
-    public void returnBook(String ISBN) {
-        
-        // Validate the ISBN. If it's not valid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+    public Stream<Book> getBooksByISBNPrefix(String prefix) {
+        // Validate the prefix. If it isn't up to 13 digits and hyphens, throw an exception.
+        IsbnRangeIndex.prefixRange(prefix);
+
+        return catalogIndex().getBooksByISBNPrefix(prefix);
+    }
+
+    /**
+     * Streams the books whose ISBN lies between two ISBNs, both included.
+     *
+     * @param fromISBN The lowest ISBN to return.
+     * @param toISBN   The highest ISBN to return.
+     * @return The books in the range, in ascending order of ISBN.
+     */
+    public Stream<Book> getBooksByISBNRange(String fromISBN, String toISBN) {
+        // Validate both ISBNs. If either is invalid, throw an exception.
+        if (!IsbnCodec.isValid(fromISBN) || !IsbnCodec.isValid(toISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        return catalogIndex().getBooksByISBNRange(fromISBN, toISBN);
+    }
 
-        // If no book is found for the given ISBN, throw a book not found exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+    /**
+     * Streams every book of the catalog, for example to export it.
+     * The books are fetched lazily as the stream is consumed and the stream can be processed in parallel,
+     * so the catalog is never held in memory at once.
+     *
+     * @return The books of the catalog.
+     */
+    public Stream<Book> streamBooks() {
+        return catalogScan().streamBooks();
+    }
+
+    /**
+     * Streams every registered user, lazily like {@link #streamBooks()}.
+     *
+     * @return The registered users.
+     */
+    public Stream<User> streamUsers() {
+        return catalogScan().streamUsers();
+    }
+
+    /**
+     * Lists the catalog one page at a time, in ascending order of ISBN.
+     * Each call holds only one page in memory, and the token of a page stays valid however much time passes
+     * before it is used: books added or lent in the meantime show up in their place.
+     * A page is read straight from its range of ISBNs in the {@link CatalogIndex}, so listing the catalog
+     * costs one pass over it whatever the page size.
+     *
+     * @param pageToken The token returned with the previous page, or null for the first page.
+     * @param pageSize  The largest number of books to return.
+     * @return The page of books, with the token of the next page.
+     */
+    public Page<Book> listBooks(String pageToken, int pageSize) {
+        // Validate the token. It is the ISBN the next page starts at, so it has to be a valid ISBN.
+        if (pageToken != null && !IsbnCodec.isValid(pageToken)) {
+            throw new IllegalArgumentException("Invalid page token.");
         }
 
-        // Check if the book is currently borrowed. If not, it means it was never borrowed
-        // or it has already been returned, therefore throw an exception.
-        if (!book.isBorrowed()) {
-            throw new BookNotBorrowedException("Book wasn't borrowed!");
+        // Validate the page size. If it's not positive, throw an exception.
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size.");
         }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
+        // Fetch one book more than asked, to learn where the next page starts.
+        String from = pageToken == null ? FIRST_ISBN : pageToken;
+        List<Book> books = new ArrayList<>();
+        try (Stream<Book> scan = catalogIndex().getBooksByISBNRange(from, LAST_ISBN)) {
+            scan.limit(pageSize + 1L).forEach(books::add);
+        }
+        String nextPageToken = null;
+        if (books.size() > pageSize) {
+            nextPageToken = IsbnCodec.normalize(books.remove(pageSize).getISBN());
+        }
+        return new Page<>(books, nextPageToken);
+    }
+
+    /**
+     * Counts the books of the catalog that are not on loan.
+     *
+     * @return The number of books available to borrow.
+     */
+    public int countAvailableBooks() {
+        return catalogIndex().countAvailableBooks();
+    }
+
+    /**
+     * Fetches every book by an author that is not on loan.
+     *
+     * @param author The name of the author.
+     * @return The available books by the author, in ascending order of ISBN.
+     */
+    public List<Book> getAvailableBooksByAuthor(String author) {
+        // Validate the author's name. If it's invalid, throw an exception.
+        if (!isAuthorValid(author)) {
+            throw new IllegalArgumentException("Invalid author.");
+        }
 
-        // Update the database to reflect the returned status of the book.
-        databaseService.returnBook(ISBN);
+        return catalogIndex().getAvailableBooksByAuthor(author);
+    }
+
+    /**
+     * Fetches every book currently on loan to a user.
+     *
+     * @param userId The Id of the user.
+     * @return The books on loan to the user, in ascending order of ISBN.
+     */
+    public List<Book> getBorrowedBooks(String userId) {
+        // Validate the user Id format (should be a 12-digit number).
+        // If it's invalid, throw an exception.
+        if (!UserId.isValid(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+
+        return catalogIndex().getBooksBorrowedBy(userId);
+    }
+
+    /**
+     * Fetches the user who currently has a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The user who borrowed the book, or null if the book is not on loan.
+     */
+    public User getBorrower(String ISBN) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        if (!IsbnCodec.isValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+
+        return catalogIndex().getBorrower(ISBN);
     }
 
     /**
@@ -253,49 +639,58 @@ public class Library {
     public void notifyUserWithBookReviews(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        if (!IsbnCodec.isValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
         // Validate the user Id format (should be a 12-digit number).
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!UserId.isValid(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        // Start fetching the reviews right away if the library has an executor for it,
+        // so that the fetch overlaps the database lookups.
+        CompletableFuture<List<String>> pendingReviews = fetchReviewsAhead(ISBN);
+
+        // Retrieve the book associated with the ISBN and the user associated with the user Id
+        // from the database in one call. If the lookup fails, the reviews are not needed after all.
+        BookContext context;
+        try {
+            context = databaseService.loadContext(ISBN, userId);
+        } catch (RuntimeException e) {
+            cancel(pendingReviews);
+            throw e;
+        }
+        Book book = context.getBook();
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
+            cancel(pendingReviews);
             throw new BookNotFoundException("Book not found!");
         }
 
-        // Retrieve the user associated with the user Id from the database.
-        User user = databaseService.getUserById(userId);
+        User user = context.getUser();
 
         // If the user is not found in the database, throw an exception.
         if (user == null) {
+            cancel(pendingReviews);
             throw new UserNotRegisteredException("User not found!");
         }
 
-        // Fetch the list of reviews for the specified book using the review service.
-        List<String> reviews;
-        try {
-            reviews = reviewService.getReviewsForBook(ISBN);
-
-            // If no reviews are found or the review list is empty, throw an exception.
-            if (reviews == null || reviews.isEmpty()) {
-                throw new NoReviewsFoundException("No reviews found!");
-            }
-        } catch (ReviewException e) {
-            // If there's an issue fetching the reviews, throw a service unavailable exception.
-            throw new ReviewServiceUnavailableException("Review service unavailable!");
-        } finally {
-            // Always close the review service connection after attempting to fetch the reviews.
-            reviewService.close();
-        }
+        // Fetch the list of reviews for the specified book using the review service,
+        // or wait for the fetch started earlier.
+        sendReviews(book, user, pendingReviews == null ? fetchReviews(ISBN) : awaitReviews(pendingReviews));
+    }
 
+    /**
+     * Sends the reviews of a book to a user, once both are known to exist.
+     *
+     * @param book    The book.
+     * @param user    The user to notify.
+     * @param reviews The reviews of the book.
+     */
+    private void sendReviews(Book book, User user, List<String> reviews) {
         // Construct the notification message containing the book's title and its reviews.
         String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
 
@@ -315,6 +710,85 @@ public class Library {
         throw new NotificationException("Notification failed!");
     }
 
+    /**
+     * Fetches the reviews of a book using the review service on the calling thread, then closes the service.
+     *
+     * @param ISBN A valid International Standard Book Number.
+     * @return The reviews of the book, never empty.
+     */
+    private List<String> fetchReviews(String ISBN) {
+        try {
+            return loadReviews(ISBN);
+        } finally {
+            // Always close the review service connection after attempting to fetch the reviews.
+            reviewService.close();
+        }
+    }
+
+    /**
+     * Fetches the reviews of a book using the review service, leaving it open. Fetches running on an executor
+     * use this, since other fetches may still be using the service; its owner closes it.
+     *
+     * @param ISBN A valid International Standard Book Number.
+     * @return The reviews of the book, never empty.
+     */
+    private List<String> loadReviews(String ISBN) {
+        try {
+            List<String> reviews = reviewService.getReviewsForBook(ISBN);
+
+            // If no reviews are found or the review list is empty, throw an exception.
+            if (reviews == null || reviews.isEmpty()) {
+                throw new NoReviewsFoundException("No reviews found!");
+            }
+            return reviews;
+        } catch (ReviewException e) {
+            // If there's an issue fetching the reviews, throw a service unavailable exception.
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+    }
+
+    /**
+     * Starts fetching the reviews of a book on the review executor, if the library has one.
+     *
+     * @param ISBN A valid International Standard Book Number.
+     * @return The pending fetch, or null if the reviews are to be fetched on the calling thread.
+     */
+    private CompletableFuture<List<String>> fetchReviewsAhead(String ISBN) {
+        if (reviewExecutor == null) {
+            return null;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> loadReviews(ISBN), reviewExecutor);
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated or shut down, so fetch in sequence instead.
+            return null;
+        }
+    }
+
+    /**
+     * Cancels a fetch started by {@link #fetchReviewsAhead(String)} whose reviews are no longer needed.
+     * A fetch still queued on the executor then never reaches the review service.
+     */
+    private static void cancel(CompletableFuture<List<String>> pendingReviews) {
+        if (pendingReviews != null) {
+            pendingReviews.cancel(false);
+        }
+    }
+
+    /**
+     * Waits for a fetch started by {@link #fetchReviewsAhead(String)}, rethrowing what the fetch threw.
+     */
+    private static List<String> awaitReviews(CompletableFuture<List<String>> pendingReviews) {
+        try {
+            return pendingReviews.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Fetches a book by its ISBN and notifies the user with its reviews.
      *
@@ -324,13 +798,13 @@ public class Library {
      */
     public Book getBookByISBN(String ISBN, String userId) {
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        if (!IsbnCodec.isValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
         // Validate the user Id format (should be a 12-digit number). 
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!UserId.isValid(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
@@ -347,6 +821,12 @@ public class Library {
             throw new BookAlreadyBorrowedException("Book was already borrowed!");
         }
 
+        // If the library notifies in the background, hand the notification over and return the book at once.
+        if (notificationExecutor != null) {
+            deferNotification(ISBN, book, userId);
+            return book;
+        }
+
         // Attempt to notify the user with the book's reviews.
         // This step is optional, so even if it fails, the book should still be returned.
         try {
@@ -358,5 +838,106 @@ public class Library {
         // Return the retrieved book.
         return book;
     }
-}
 
+    /**
+     * Notifies a user with the reviews of a book on the notification executor.
+     * The ISBN and the user Id were validated and the book was found by the caller, so only the user is looked up.
+     *
+     * @param ISBN   A valid International Standard Book Number.
+     * @param book   The book with the ISBN.
+     * @param userId A valid user Id.
+     */
+    private void deferNotification(String ISBN, Book book, String userId) {
+        try {
+            notificationExecutor.execute(() -> {
+                try {
+                    CompletableFuture<List<String>> pendingReviews = fetchReviewsAhead(ISBN);
+                    User user;
+                    try {
+                        user = databaseService.getUserById(UserId.parse(userId));
+                    } catch (RuntimeException e) {
+                        cancel(pendingReviews);
+                        throw e;
+                    }
+                    if (user == null) {
+                        cancel(pendingReviews);
+                        throw new UserNotRegisteredException("User not found!");
+                    }
+                    sendReviews(book, user, pendingReviews == null ? loadReviews(ISBN) : awaitReviews(pendingReviews));
+                } catch (Exception e) {
+                    System.out.println("Notification failed!");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The queue is full or the executor is shut down; drop the notification rather than wait.
+            System.out.println("Notification failed!");
+        }
+    }
+
+    /**
+     * The optional collaborators of a {@link Library}. Each one left unset keeps the behavior of
+     * {@link Library#Library(DatabaseService, ReviewService)}.
+     */
+    public static final class Options {
+
+        private CatalogIndex catalogIndex;
+        private StripedLock locks;
+        private Executor reviewExecutor;
+        private Executor notificationExecutor;
+
+        /**
+         * Answers the lookups of the catalog from an index kept beside the database,
+         * for example an {@link ac.il.bgu.qa.services.IndexedDatabaseService} behind other decorators.
+         *
+         * @param catalogIndex The index of the catalog, or null to use the one of the database service, if any.
+         * @return These options.
+         */
+        public Options catalogIndex(CatalogIndex catalogIndex) {
+            this.catalogIndex = catalogIndex;
+            return this;
+        }
+
+        /**
+         * Serializes addBook, borrowBook and returnBook calls for the same ISBN with a lock per stripe of ISBNs,
+         * for database services that cannot apply such changes atomically.
+         * Calls for ISBNs of different stripes still run in parallel.
+         *
+         * @param locks The locks to take per ISBN, or null to take none.
+         * @return These options.
+         */
+        public Options locks(StripedLock locks) {
+            this.locks = locks;
+            return this;
+        }
+
+        /**
+         * Fetches the reviews of a book on an executor, starting as soon as the ISBN is validated,
+         * while the book and the user are looked up in the database. A notification then takes about as long
+         * as the slower of the two rather than their sum. If a lookup fails, the fetch is cancelled, so a fetch
+         * still queued never reaches the review service. Fetches on the executor may overlap, so they leave
+         * the review service open; its owner closes it.
+         *
+         * @param reviewExecutor Executor to fetch reviews on, or null to fetch them after the lookups.
+         * @return These options.
+         */
+        public Options reviewExecutor(Executor reviewExecutor) {
+            this.reviewExecutor = reviewExecutor;
+            return this;
+        }
+
+        /**
+         * Makes {@link Library#getBookByISBN(String, String)} return the book as soon as it is found,
+         * handing the review notification to an executor instead of waiting for it. The executor should bound
+         * its queue, see {@link RequestExecutors#newBoundedExecutor(int, int)}; a notification it rejects is
+         * dropped, like one that fails. Deferred notifications may overlap, so they leave the review service
+         * open; its owner closes it.
+         *
+         * @param notificationExecutor Executor to notify users on, or null to notify them before returning the book.
+         * @return These options.
+         */
+        public Options notificationExecutor(Executor notificationExecutor) {
+            this.notificationExecutor = notificationExecutor;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ac.il.bgu.qa;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents one page of a listing, with the token that fetches the next page.
+ *
+ * @param <T> The type of the items on the page.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+
+    // Null on the last page.
+    private final String nextPageToken;
+
+    Page(List<T> items, String nextPageToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * Retrieves the items on the page.
+     *
+     * @return The items, in the order of the listing.
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Retrieves the token to pass back for the next page.
+     *
+     * @return The token of the next page, or null if this is the last page.
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    /**
+     * Checks if the listing goes on after this page.
+     *
+     * @return true if there is a next page, otherwise false.
+     */
+    public boolean hasNextPage() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,69 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors that run the blocking service calls of an {@link AsyncLibrary}, one task per call,
+ * and the bounded executors that run the background work of a {@link Library}.
+ * <p>
+ * On Java 21 and later every per-call task gets its own virtual thread, which parks rather than pins a platform thread
+ * while the call waits on I/O, so the number of requests in flight is no longer bounded by a thread pool.
+ * The library itself is built for Java 8. On JDK 21 the {@code java21} profile builds a multi-release jar that
+ * creates virtual threads directly; otherwise they are looked up reflectively. On older runtimes the per-call
+ * executors fall back to a fixed pool of platform threads. {@code RequestExecutorsBenchmark} in the test sources
+ * compares the two.
+ */
+public final class RequestExecutors {
+
+    private RequestExecutors() {
+    }
+
+    /**
+     * Checks if the running Java version has virtual threads.
+     *
+     * @return true if {@link #newPerRequestExecutor(int)} runs each task on a virtual thread, otherwise false.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread, or on a fixed pool of platform threads
+     * when virtual threads are not available.
+     *
+     * @param platformThreads The size of the fallback pool.
+     * @return The executor. The caller shuts it down.
+     */
+    public static ExecutorService newPerRequestExecutor(int platformThreads) {
+        if (platformThreads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads.");
+        }
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        return executor != null ? executor : Executors.newFixedThreadPool(platformThreads);
+    }
+
+    /**
+     * Creates an executor for background work that may be dropped under load, such as the deferred review
+     * notifications of a {@link Library}. Tasks wait in a queue of bounded capacity, and a task submitted while
+     * the queue is full is rejected with a {@link java.util.concurrent.RejectedExecutionException} rather than
+     * piling up on the heap.
+     *
+     * @param threads       The number of threads running the tasks.
+     * @param queueCapacity The largest number of tasks waiting for a thread.
+     * @return The executor. The caller shuts it down.
+     */
+    public static ExecutorService newBoundedExecutor(int threads, int queueCapacity) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads.");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid queue capacity.");
+        }
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity));
+    }
+}
@@ -0,0 +1,167 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed array of locks, each guarding every key that hashes to it.
+ * <p>
+ * Operations on the same key are serialized, while operations on keys of different stripes proceed in
+ * parallel. Two keys may share a stripe, so a thread must not hold the lock of one key while acquiring
+ * the lock of another; {@link #lockAll(Collection)} takes the locks of several keys at once, in an order
+ * that cannot deadlock. The locks record how often they were contended and how long threads waited for them.
+ */
+public class StripedLock {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    // Per stripe: acquisitions that had to wait, and the total time waited in nanoseconds.
+    private final AtomicLongArray contended;
+    private final AtomicLongArray waitNanos;
+    private final LongAdder acquisitions = new LongAdder();
+
+    /**
+     * Constructs the locks.
+     *
+     * @param stripes The number of locks, rounded up to a power of two.
+     */
+    public StripedLock(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("Invalid number of stripes.");
+        }
+        int size = Integer.highestOneBit(stripes - 1) << 1;
+        size = Math.max(size, 1);
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.contended = new AtomicLongArray(size);
+        this.waitNanos = new AtomicLongArray(size);
+    }
+
+    /**
+     * Acquires the lock guarding a key, waiting if another thread holds it.
+     * The caller must release the returned lock.
+     *
+     * @param key The key, for example a packed ISBN.
+     * @return The acquired lock.
+     */
+    public Lock lock(long key) {
+        return acquire(stripeOf(key));
+    }
+
+    /**
+     * Acquires the locks guarding several keys, each stripe once and in ascending order,
+     * so that two threads locking overlapping sets of keys never deadlock.
+     * The caller must release every returned lock.
+     *
+     * @param keys The keys, for example packed ISBNs.
+     * @return The acquired locks.
+     */
+    public List<Lock> lockAll(Collection<Long> keys) {
+        BitSet needed = new BitSet(stripes.length);
+        for (long key : keys) {
+            needed.set(stripeOf(key));
+        }
+        List<Lock> locks = new ArrayList<>(needed.cardinality());
+        for (int stripe = needed.nextSetBit(0); stripe >= 0; stripe = needed.nextSetBit(stripe + 1)) {
+            locks.add(acquire(stripe));
+        }
+        return locks;
+    }
+
+    // Acquires the lock of a stripe, recording whether and how long it had to wait.
+    private Lock acquire(int stripe) {
+        ReentrantLock lock = stripes[stripe];
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            contended.incrementAndGet(stripe);
+            waitNanos.addAndGet(stripe, System.nanoTime() - start);
+        }
+        return lock;
+    }
+
+    /**
+     * Retrieves the number of locks.
+     *
+     * @return The number of stripes.
+     */
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Finds the stripe guarding a key.
+     *
+     * @param key The key.
+     * @return The index of the stripe, between 0 and {@link #stripeCount()} - 1.
+     */
+    public int stripeOf(long key) {
+        return (int) KeyHashing.mix(key) & mask;
+    }
+
+    /**
+     * Retrieves the number of times a lock was acquired.
+     *
+     * @return The number of acquisitions.
+     */
+    public long getAcquisitionCount() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Retrieves the number of acquisitions that had to wait for another thread, over all stripes.
+     *
+     * @return The number of contended acquisitions.
+     */
+    public long getContendedCount() {
+        long total = 0;
+        for (int i = 0; i < contended.length(); i++) {
+            total += contended.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the number of acquisitions of one stripe that had to wait for another thread.
+     *
+     * @param stripe The index of the stripe.
+     * @return The number of contended acquisitions of the stripe.
+     */
+    public long getContendedCount(int stripe) {
+        return contended.get(stripe);
+    }
+
+    /**
+     * Retrieves the total time threads waited for a lock, over all stripes.
+     *
+     * @return The total wait time in nanoseconds.
+     */
+    public long getWaitNanos() {
+        long total = 0;
+        for (int i = 0; i < waitNanos.length(); i++) {
+            total += waitNanos.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the total time threads waited for the lock of one stripe.
+     *
+     * @param stripe The index of the stripe.
+     * @return The total wait time of the stripe in nanoseconds.
+     */
+    public long getWaitNanos(int stripe) {
+        return waitNanos.get(stripe);
+    }
+}
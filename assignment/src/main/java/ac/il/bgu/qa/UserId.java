@@ -0,0 +1,134 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents a user Id, a 12-digit number, parsed once into a single long.
+ * Validation is a hand-written digit check that does not allocate.
+ */
+public final class UserId implements Comparable<UserId> {
+
+    // Returned by parse when the input is not a valid user Id.
+    public static final long INVALID = -1L;
+
+    // Number of digits in a user Id.
+    public static final int LENGTH = 12;
+
+    // The 12 digits of the user Id as a number.
+    private final long value;
+
+    private UserId(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Validates the user Id's format (should be a 12-digit number).
+     *
+     * @param userId The user Id to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(CharSequence userId) {
+        return parse(userId) != INVALID;
+    }
+
+    /**
+     * Parses a 12-digit user Id into a long.
+     *
+     * @param userId The user Id to parse.
+     * @return The numeric value of the user Id, or {@link #INVALID} if it is not a 12-digit number.
+     */
+    public static long parse(CharSequence userId) {
+        if (userId == null || userId.length() != LENGTH) {
+            return INVALID;
+        }
+
+        long value = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Creates a user Id from its string form.
+     *
+     * @param userId The user Id.
+     * @return The parsed user Id.
+     * @throws IllegalArgumentException If the user Id is not a 12-digit number.
+     */
+    public static UserId of(CharSequence userId) {
+        long parsed = parse(userId);
+        if (parsed == INVALID) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return new UserId(parsed);
+    }
+
+    /**
+     * Creates a user Id from its numeric form.
+     *
+     * @param userId A value returned by {@link #parse(CharSequence)} or {@link #toLong()}.
+     * @return The user Id.
+     * @throws IllegalArgumentException If the value does not fit in 12 digits.
+     */
+    public static UserId valueOf(long userId) {
+        if (userId < 0 || userId > 999_999_999_999L) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return new UserId(userId);
+    }
+
+    /**
+     * Formats a numeric user Id back to its 12-digit string form, keeping leading zeros.
+     *
+     * @param userId A value returned by {@link #parse(CharSequence)}.
+     * @return The 12-digit form of the user Id.
+     */
+    public static String format(long userId) {
+        if (userId < 0 || userId > 999_999_999_999L) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + userId % 10);
+            userId /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Retrieves the numeric form of the user Id.
+     *
+     * @return The 12 digits of the user Id as a long.
+     */
+    public long toLong() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(UserId other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof UserId && ((UserId) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    /**
+     * Retrieves the 12-digit form of the user Id.
+     *
+     * @return The user Id.
+     */
+    @Override
+    public String toString() {
+        return format(value);
+    }
+}
@@ -0,0 +1,55 @@
+package ac.il.bgu.qa;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual-thread executors for {@link RequestExecutors}.
+ * <p>
+ * This is the Java 8 version. It looks the factory up reflectively, so it also works when the classes run
+ * outside the jar. On Java 21 the multi-release jar replaces it with the version in {@code src/main/java21},
+ * which calls the factory directly.
+ */
+final class VirtualThreads {
+
+    // Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21.
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks if the running Java version has virtual threads.
+     *
+     * @return true if {@link #newPerTaskExecutor()} returns an executor, otherwise false.
+     */
+    static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread.
+     *
+     * @return The executor, or null if virtual threads are not available.
+     */
+    static ExecutorService newPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
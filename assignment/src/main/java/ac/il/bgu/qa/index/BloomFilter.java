@@ -0,0 +1,131 @@
+package ac.il.bgu.qa.index;
+
+import ac.il.bgu.qa.KeyHashing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over packed ISBNs or other long keys.
+ * <p>
+ * {@link #mightContain(long)} never answers false for a key that was added, and answers true for a
+ * key that was not added with a probability that grows as the filter fills up, see
+ * {@link #expectedFalsePositiveRate()}. Adding and querying never lock.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+
+    /**
+     * Constructs an empty filter sized for the expected number of keys and false positive rate.
+     *
+     * @param expectedInsertions The number of keys the filter is expected to hold.
+     * @param falsePositiveRate  The false positive rate wanted once that many keys were added, between 0 and 1.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Invalid expected insertions.");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid false positive rate.");
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = words * 64L;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @param key The key.
+     */
+    public void put(long key) {
+        long hash1 = KeyHashing.mix(key);
+        long hash2 = KeyHashing.mix(hash1) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitSize);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0
+                    && !bits.compareAndSet(word, current, current | mask)) {
+                // another bit of the same word changed meanwhile, retry
+            }
+        }
+    }
+
+    /**
+     * Checks if a key may have been added to the filter.
+     *
+     * @param key The key.
+     * @return false if the key was definitely never added, true if it may have been.
+     */
+    public boolean mightContain(long key) {
+        long hash1 = KeyHashing.mix(key);
+        long hash2 = KeyHashing.mix(hash1) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitSize);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the number of bits of the filter.
+     *
+     * @return The size of the filter in bits.
+     */
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Retrieves the number of bits each key sets.
+     *
+     * @return The number of hash functions.
+     */
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * Counts the bits currently set. This walks the whole filter.
+     *
+     * @return The number of set bits.
+     */
+    public long bitCount() {
+        long count = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            count += Long.bitCount(bits.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * Estimates the probability that {@link #mightContain(long)} answers true for a key
+     * that was never added, given how full the filter currently is. This walks the whole filter.
+     *
+     * @return The expected false positive rate, between 0 and 1.
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitCount() / bitSize, hashFunctions);
+    }
+
+    /**
+     * Estimates the number of distinct keys added, from the number of set bits. This walks the whole filter.
+     *
+     * @return The estimated number of keys.
+     */
+    public long approximateElementCount() {
+        double fill = (double) bitCount() / bitSize;
+        if (fill >= 1) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-Math.log1p(-fill) * bitSize / hashFunctions);
+    }
+}
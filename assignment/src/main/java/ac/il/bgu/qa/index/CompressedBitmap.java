@@ -0,0 +1,387 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, in the style of a roaring bitmap.
+ * <p>
+ * The ints are split by their upper 16 bits into chunks of 65536. A chunk holding few ints keeps them
+ * as a sorted array of 16-bit values; a chunk holding more than 4096 keeps a plain bitmap of 8 KB.
+ * Sparse sets therefore take about two bytes per int and dense ones about one bit, and cardinality and
+ * intersection work a word or an array at a time rather than an int at a time.
+ * <p>
+ * Not thread-safe: callers sharing a bitmap between threads must guard it.
+ */
+public class CompressedBitmap {
+
+    // Chunks with more ints than this keep a bitmap rather than an array.
+    private static final int ARRAY_LIMIT = 4096;
+
+    // Upper 16 bits of every chunk, ascending, and the chunk for each.
+    private int[] highs = new int[0];
+    private Container[] containers = new Container[0];
+    private int chunks;
+    private int cardinality;
+
+    /**
+     * Adds an int to the set.
+     *
+     * @param value A non-negative int.
+     * @return true if the int was not in the set yet.
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid value.");
+        }
+        int high = value >>> 16;
+        int index = Arrays.binarySearch(highs, 0, chunks, high);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, high, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add((char) value);
+        boolean added = containers[index].cardinality() != before;
+        if (added) {
+            cardinality++;
+        }
+        return added;
+    }
+
+    /**
+     * Removes an int from the set.
+     *
+     * @param value The int.
+     * @return true if the int was in the set.
+     */
+    public boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(highs, 0, chunks, value >>> 16);
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        Container updated = container.remove((char) value);
+        if (updated.cardinality() == before) {
+            return false;
+        }
+        cardinality--;
+        if (updated.cardinality() == 0) {
+            removeChunk(index);
+        } else {
+            containers[index] = updated;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if an int is in the set.
+     *
+     * @param value The int.
+     * @return true if the int is in the set.
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(highs, 0, chunks, value >>> 16);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Counts the ints in the set, in constant time.
+     *
+     * @return The number of ints.
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Computes the intersection of this set and another one.
+     *
+     * @param other The other set.
+     * @return A new set holding the ints of both sets.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < chunks && j < other.chunks) {
+            if (highs[i] < other.highs[j]) {
+                i++;
+            } else if (highs[i] > other.highs[j]) {
+                j++;
+            } else {
+                Container common = containers[i].and(other.containers[j]);
+                if (common.cardinality() > 0) {
+                    result.insertChunk(result.chunks, highs[i], common);
+                    result.cardinality += common.cardinality();
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the ints of both this set and another one, without building the intersection.
+     *
+     * @param other The other set.
+     * @return The size of the intersection.
+     */
+    public int andCardinality(CompressedBitmap other) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < chunks && j < other.chunks) {
+            if (highs[i] < other.highs[j]) {
+                i++;
+            } else if (highs[i] > other.highs[j]) {
+                j++;
+            } else {
+                count += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Calls an action for every int of the set, in ascending order.
+     *
+     * @param action The action.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < chunks; i++) {
+            containers[i].forEach(highs[i] << 16, action);
+        }
+    }
+
+    /**
+     * Copies the set into an array.
+     *
+     * @return The ints of the set, in ascending order.
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int[] count = new int[1];
+        forEach(value -> values[count[0]++] = value);
+        return values;
+    }
+
+    private void insertChunk(int index, int high, Container container) {
+        if (chunks == highs.length) {
+            int capacity = Math.max(4, chunks * 2);
+            highs = Arrays.copyOf(highs, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(highs, index, highs, index + 1, chunks - index);
+        System.arraycopy(containers, index, containers, index + 1, chunks - index);
+        highs[index] = high;
+        containers[index] = container;
+        chunks++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(highs, index + 1, highs, index, chunks - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, chunks - index - 1);
+        chunks--;
+        containers[chunks] = null;
+    }
+
+    /**
+     * The ints of one chunk, by their lower 16 bits. Changes return the container to use from then on,
+     * which is a different kind of container when the chunk crosses {@link #ARRAY_LIMIT}.
+     */
+    private abstract static class Container {
+
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract void forEach(int base, IntConsumer action);
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private char[] values = new char[4];
+        private int size;
+
+        @Override
+        Container add(char low) {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0) {
+                return this;
+            }
+            if (size == ARRAY_LIMIT) {
+                return toBitmap().add(low);
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, size * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        Container and(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(1, size)];
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) {
+                    result.values[result.size++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words = new long[1024];
+        private int cardinality;
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                words[low >>> 6] &= ~bit;
+                cardinality--;
+                if (cardinality <= ARRAY_LIMIT / 2) {
+                    return toArray();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < words.length; i++) {
+                result.words[i] = words[i] & otherWords[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result.cardinality <= ARRAY_LIMIT ? result.toArray() : result;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                return other.andCardinality(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                count += Long.bitCount(words[i] & otherWords[i]);
+            }
+            return count;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(4, cardinality)];
+            forEach(0, value -> array.values[array.size++] = (char) value);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ac.il.bgu.qa.index;
+
+import ac.il.bgu.qa.IsbnCodec;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.LongStream;
+
+/**
+ * A thread-safe ordered index of packed ISBNs, answering range and prefix scans.
+ * <p>
+ * An ISBN-13 is hierarchical: the prefix, the registration group and the registrant come first, so every
+ * title of a publisher shares a leading run of digits, and packed ISBNs of one publisher form a contiguous
+ * range. Scans are streamed lazily from a skip list and reflect additions made while they run.
+ */
+public class IsbnRangeIndex {
+
+    // 10^n for every n up to the length of an ISBN.
+    private static final long[] POWERS_OF_TEN = new long[IsbnCodec.LENGTH + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ConcurrentSkipListSet<Long> keys = new ConcurrentSkipListSet<>();
+
+    /**
+     * Adds a packed ISBN to the index.
+     *
+     * @param key The packed ISBN.
+     */
+    public void add(long key) {
+        keys.add(key);
+    }
+
+    /**
+     * Streams the packed ISBNs in a range, in ascending order.
+     *
+     * @param fromInclusive The lowest packed ISBN to return.
+     * @param toExclusive   The packed ISBN past the last one to return.
+     * @return The packed ISBNs in the range.
+     */
+    public LongStream range(long fromInclusive, long toExclusive) {
+        if (fromInclusive >= toExclusive) {
+            return LongStream.empty();
+        }
+        return keys.subSet(fromInclusive, true, toExclusive, false).stream().mapToLong(Long::longValue);
+    }
+
+    /**
+     * Streams the packed ISBNs whose 13 digits start with a prefix, in ascending order.
+     *
+     * @param prefix The leading digits of the ISBNs, hyphens allowed, for example "978-0-306".
+     * @return The packed ISBNs starting with the prefix.
+     * @throws IllegalArgumentException If the prefix has no digits, more than 13, or any character
+     *                                  other than digits and hyphens.
+     */
+    public LongStream prefix(CharSequence prefix) {
+        long[] bounds = prefixRange(prefix);
+        return range(bounds[0], bounds[1]);
+    }
+
+    /**
+     * Retrieves the number of ISBNs in the index. This walks the whole index.
+     *
+     * @return The number of ISBNs.
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Computes the range of packed ISBNs starting with a prefix.
+     *
+     * @param prefix The leading digits of the ISBNs, hyphens allowed.
+     * @return The lowest packed ISBN with the prefix, and the packed ISBN past the highest one.
+     * @throws IllegalArgumentException If the prefix is invalid.
+     */
+    public static long[] prefixRange(CharSequence prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Invalid ISBN prefix.");
+        }
+        long digits = 0;
+        int count = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || count == IsbnCodec.LENGTH) {
+                throw new IllegalArgumentException("Invalid ISBN prefix.");
+            }
+            digits = digits * 10 + (c - '0');
+            count++;
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("Invalid ISBN prefix.");
+        }
+        long scale = POWERS_OF_TEN[IsbnCodec.LENGTH - count];
+        return new long[]{digits * scale, (digits + 1) * scale};
+    }
+}
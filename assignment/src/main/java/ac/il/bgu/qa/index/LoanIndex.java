@@ -0,0 +1,109 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe index of the books currently on loan, answering both "who has this book" and
+ * "which books does this user have" with a single hash probe.
+ * <p>
+ * Books are identified by packed ISBN and users by numeric user Id. The two directions are updated
+ * together while holding the lock of the book's entry, so a reader never sees a book lent to two users.
+ */
+public class LoanIndex {
+
+    /**
+     * The value {@link #borrowerOf(long)} returns for a book that is not on loan.
+     */
+    public static final long NOT_BORROWED = -1L;
+
+    // User by book, for every book on loan.
+    private final ConcurrentHashMap<Long, Long> borrowers = new ConcurrentHashMap<>();
+
+    // Books by user, for every user with at least one loan.
+    private final ConcurrentHashMap<Long, Set<Long>> loans = new ConcurrentHashMap<>();
+
+    /**
+     * Records that a book is borrowed by a user, replacing any earlier borrower of the book.
+     *
+     * @param ISBN The packed ISBN of the book.
+     * @param user The numeric Id of the user.
+     */
+    public void borrow(long ISBN, long user) {
+        borrowers.compute(ISBN, (ignored, previous) -> {
+            if (previous != null) {
+                forget(previous, ISBN);
+            }
+            loans.compute(user, (key, books) -> {
+                Set<Long> updated = books == null ? ConcurrentHashMap.<Long>newKeySet() : books;
+                updated.add(ISBN);
+                return updated;
+            });
+            return user;
+        });
+    }
+
+    /**
+     * Records that a book was returned. Has no effect if the book is not on loan.
+     *
+     * @param ISBN The packed ISBN of the book.
+     */
+    public void giveBack(long ISBN) {
+        borrowers.computeIfPresent(ISBN, (ignored, user) -> {
+            forget(user, ISBN);
+            return null;
+        });
+    }
+
+    /**
+     * Finds the user who has a book.
+     *
+     * @param ISBN The packed ISBN of the book.
+     * @return The numeric Id of the borrower, or {@link #NOT_BORROWED}.
+     */
+    public long borrowerOf(long ISBN) {
+        Long user = borrowers.get(ISBN);
+        return user == null ? NOT_BORROWED : user;
+    }
+
+    /**
+     * Finds the books a user has.
+     *
+     * @param user The numeric Id of the user.
+     * @return The packed ISBNs of the books on loan to the user, in ascending order. Empty if none.
+     */
+    public long[] loansOf(long user) {
+        Set<Long> books = loans.get(user);
+        if (books == null) {
+            return new long[0];
+        }
+        long[] found = books.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Counts the books a user has, for example to enforce a loan limit.
+     *
+     * @param user The numeric Id of the user.
+     * @return The number of books on loan to the user.
+     */
+    public int loanCount(long user) {
+        Set<Long> books = loans.get(user);
+        return books == null ? 0 : books.size();
+    }
+
+    /**
+     * Counts the books on loan.
+     *
+     * @return The number of books on loan.
+     */
+    public int size() {
+        return borrowers.size();
+    }
+
+    private void forget(long user, long ISBN) {
+        loans.computeIfPresent(user, (key, books) -> books.remove(ISBN) && books.isEmpty() ? null : books);
+    }
+}
@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Locale;
+
+/**
+ * Normalizes author names and titles into index terms, so that lookups ignore case and punctuation.
+ */
+public final class Names {
+
+    private Names() {
+    }
+
+    /**
+     * Normalizes an author name of the form the library accepts: letters separated by spaces, hyphens,
+     * dots and apostrophes. Letters are lower-cased, apostrophes dropped, and every run of spaces, hyphens
+     * and dots becomes a single space, so "J.R.R. Tolkien" and "j. r. r. tolkien" give the same term.
+     *
+     * @param name The author name.
+     * @return The normalized name, or null if the name is null or has no letters.
+     */
+    public static String normalizeAuthor(String name) {
+        return normalize(name, false);
+    }
+
+    /**
+     * Normalizes a title. Letters are lower-cased, digits kept, apostrophes dropped,
+     * and every other run of characters becomes a single space.
+     *
+     * @param title The title.
+     * @return The normalized title, or null if the title is null or has no letters or digits.
+     */
+    public static String normalizeTitle(String title) {
+        return normalize(title, true);
+    }
+
+    private static String normalize(String text, boolean keepDigits) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean separator = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c) || (keepDigits && Character.isDigit(c))) {
+                if (separator && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                separator = false;
+                normalized.append(c);
+            } else if (c != '\'' && c != '\u2019') {
+                separator = true;
+            }
+        }
+        return normalized.length() == 0 ? null : normalized.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,98 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Arrays;
+
+/**
+ * An append-only, compressed list of ascending document numbers.
+ * <p>
+ * Each number is stored as the gap from the previous one in a variable-length encoding of 7 bits per byte,
+ * so the dense postings of common terms take about one byte per document. One thread at a time may append;
+ * any number of threads may read concurrently without locking.
+ */
+public class PostingList {
+
+    // Encoded gaps. Replaced by a larger copy when full; bytes past length are not yet published.
+    private volatile byte[] data = new byte[4];
+
+    // Published bytes and documents. Written after the bytes they cover, read before them.
+    private volatile int length;
+    private volatile int size;
+
+    // The last document appended, only used by the appending thread.
+    private int last = -1;
+
+    /**
+     * Appends a document. Appending the last document again has no effect.
+     * Callers must serialize appends.
+     *
+     * @param document The document number, not less than the last one appended.
+     */
+    public void add(int document) {
+        if (document == last) {
+            return;
+        }
+        if (document < last) {
+            throw new IllegalArgumentException("Documents must be added in ascending order.");
+        }
+        int gap = document - last;
+        byte[] bytes = data;
+        int position = length;
+        if (position + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + 5));
+            data = bytes;
+        }
+        while ((gap & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((gap & 0x7F) | 0x80);
+            gap >>>= 7;
+        }
+        bytes[position++] = (byte) gap;
+        last = document;
+        length = position;
+        size++;
+    }
+
+    /**
+     * Retrieves the number of documents in the list.
+     *
+     * @return The number of documents.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the number of bytes the encoded documents take.
+     *
+     * @return The encoded size in bytes.
+     */
+    public int encodedSize() {
+        return length;
+    }
+
+    /**
+     * Decodes the documents published so far.
+     *
+     * @return The document numbers, in ascending order.
+     */
+    public int[] toArray() {
+        int end = length;
+        byte[] bytes = data;
+        int[] documents = new int[size];
+        int count = 0;
+        int document = -1;
+        int position = 0;
+        while (position < end && count < documents.length) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            document += gap;
+            documents[count++] = document;
+        }
+        return count == documents.length ? documents : Arrays.copyOf(documents, count);
+    }
+}
@@ -0,0 +1,85 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A thread-safe index from a normalized term, such as an author name, to the packed ISBNs of the books having it.
+ * A lookup costs one hash probe plus the size of its result, whatever the size of the catalog.
+ */
+public class SecondaryIndex {
+
+    // Turns the indexed text into its term, or null for text that is not indexed.
+    private final Function<String, String> normalizer;
+
+    // Packed ISBNs by term.
+    private final ConcurrentHashMap<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param normalizer Turns text into the term it is indexed under, for example {@link Names#normalizeAuthor(String)}.
+     */
+    public SecondaryIndex(Function<String, String> normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Indexes a key under the term of a text.
+     *
+     * @param text The text, for example the author of a book.
+     * @param key  The packed ISBN of the book.
+     */
+    public void add(String text, long key) {
+        String term = normalizer.apply(text);
+        if (term != null) {
+            // Added inside compute, so that a concurrent remove cannot drop the set being added to.
+            postings.compute(term, (ignored, keys) -> {
+                Set<Long> updated = keys == null ? ConcurrentHashMap.<Long>newKeySet() : keys;
+                updated.add(key);
+                return updated;
+            });
+        }
+    }
+
+    /**
+     * Removes a key from the term of a text.
+     *
+     * @param text The text the key was indexed with.
+     * @param key  The packed ISBN of the book.
+     */
+    public void remove(String text, long key) {
+        String term = normalizer.apply(text);
+        if (term != null) {
+            postings.computeIfPresent(term, (ignored, keys) -> keys.remove(key) && keys.isEmpty() ? null : keys);
+        }
+    }
+
+    /**
+     * Finds the keys indexed under the term of a text.
+     *
+     * @param text The text to look up, normalized the same way as indexed text.
+     * @return The packed ISBNs, in ascending order. Empty if none.
+     */
+    public long[] find(String text) {
+        String term = normalizer.apply(text);
+        Set<Long> keys = term == null ? null : postings.get(term);
+        if (keys == null) {
+            return new long[0];
+        }
+        long[] found = keys.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Retrieves the number of distinct terms in the index.
+     *
+     * @return The number of terms.
+     */
+    public int termCount() {
+        return postings.size();
+    }
+}
@@ -0,0 +1,74 @@
+package ac.il.bgu.qa.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbers the books of a catalog densely, so that per-book state can be kept in a {@link CompressedBitmap}.
+ * The slot of a book never changes. Assigning is serialized; lookups never lock.
+ */
+public class SlotTable {
+
+    /**
+     * The value {@link #slotOf(long)} returns for a book without a slot.
+     */
+    public static final int NO_SLOT = -1;
+
+    // Slot by packed ISBN.
+    private final ConcurrentHashMap<Long, Integer> slots = new ConcurrentHashMap<>();
+
+    // Packed ISBN by slot, published before the slot is.
+    private volatile long[] keys = new long[16];
+
+    /**
+     * Assigns the next slot to a book, unless it already has one.
+     *
+     * @param key The packed ISBN of the book.
+     * @return The slot of the book.
+     */
+    public synchronized int assign(long key) {
+        Integer existing = slots.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int slot = slots.size();
+        long[] current = keys;
+        if (slot == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[slot] = key;
+        keys = current;
+        slots.put(key, slot);
+        return slot;
+    }
+
+    /**
+     * Finds the slot of a book.
+     *
+     * @param key The packed ISBN of the book.
+     * @return The slot, or {@link #NO_SLOT} if the book has none.
+     */
+    public int slotOf(long key) {
+        Integer slot = slots.get(key);
+        return slot == null ? NO_SLOT : slot;
+    }
+
+    /**
+     * Finds the book in a slot.
+     *
+     * @param slot A slot returned by {@link #assign(long)}.
+     * @return The packed ISBN of the book.
+     */
+    public long keyOf(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Retrieves the number of slots assigned.
+     *
+     * @return The number of books.
+     */
+    public int size() {
+        return slots.size();
+    }
+}
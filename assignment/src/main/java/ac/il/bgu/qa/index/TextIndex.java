@@ -0,0 +1,245 @@
+package ac.il.bgu.qa.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory full-text index over the titles and authors of books, ranking matches by relevance.
+ * <p>
+ * Every word of a title or author name, normalized by {@link Names}, has a posting list of the books
+ * containing it. Every three-letter sequence has a posting list of the distinct words containing it.
+ * A query word matches a book exactly when the book contains the word, and partially when one of the book's
+ * words contains the query word, so "hobb" finds "The Hobbit". Partial matches are found by intersecting the
+ * words of every trigram of the query word and checking each candidate word, so trigrams spread over several
+ * words of a book do not match. Postings are compressed, see {@link PostingList}.
+ * <p>
+ * Relevance adds, for every query word, the rarity of the word across the catalog, weighted twice as
+ * much in a title as in an author name and half as much for a partial match as for an exact one.
+ * <p>
+ * Adding is serialized; searching never locks and sees every book whose addition completed.
+ */
+public class TextIndex {
+
+    private static final double TITLE_WEIGHT = 2;
+    private static final double AUTHOR_WEIGHT = 1;
+    private static final double PARTIAL_WEIGHT = 0.5;
+
+    // Prefixes of the posting keys, per field and per kind of term.
+    private static final String TITLE_WORD = "t:";
+    private static final String TITLE_TRIGRAM = "t#";
+    private static final String AUTHOR_WORD = "a:";
+    private static final String AUTHOR_TRIGRAM = "a#";
+
+    // Documents by word, and words by trigram, keyed by the prefixed term.
+    private final ConcurrentHashMap<String, PostingList> postings = new ConcurrentHashMap<>();
+
+    // Number of each distinct prefixed word, and the words by number, published before the trigram postings.
+    private final Map<String, Integer> wordNumbers = new HashMap<>();
+    private volatile String[] words = new String[16];
+
+    // Packed ISBN by document number, published before the postings that refer to it.
+    private volatile long[] keys = new long[16];
+    private volatile int documents;
+
+    /**
+     * Indexes a book.
+     *
+     * @param key    The packed ISBN of the book.
+     * @param title  The title of the book.
+     * @param author The author of the book.
+     */
+    public synchronized void add(long key, String title, String author) {
+        int document = documents;
+        long[] current = keys;
+        if (document == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[document] = key;
+        keys = current;
+        documents = document + 1;
+        addTerms(document, Names.normalizeTitle(title), TITLE_WORD, TITLE_TRIGRAM);
+        addTerms(document, Names.normalizeAuthor(author), AUTHOR_WORD, AUTHOR_TRIGRAM);
+    }
+
+    /**
+     * Finds the books most relevant to a query.
+     *
+     * @param query The words to look for, in any case and with any punctuation.
+     * @param limit The largest number of books to return.
+     * @return The packed ISBNs of the matching books, most relevant first, ties broken by the order of addition.
+     */
+    public long[] search(String query, int limit) {
+        String normalized = Names.normalizeTitle(query);
+        if (normalized == null || limit <= 0) {
+            return new long[0];
+        }
+        int total = documents;
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String word : normalized.split(" ")) {
+            score(scores, word, TITLE_WORD, TITLE_TRIGRAM, TITLE_WEIGHT, total);
+            score(scores, word, AUTHOR_WORD, AUTHOR_TRIGRAM, AUTHOR_WEIGHT, total);
+        }
+        return top(scores, limit);
+    }
+
+    /**
+     * Retrieves the number of books indexed.
+     *
+     * @return The number of books.
+     */
+    public int documentCount() {
+        return documents;
+    }
+
+    /**
+     * Retrieves the number of bytes taken by the encoded postings, excluding the posting keys.
+     *
+     * @return The encoded size of every posting list.
+     */
+    public long encodedSize() {
+        long total = 0;
+        for (PostingList list : postings.values()) {
+            total += list.encodedSize();
+        }
+        return total;
+    }
+
+    private void addTerms(int document, String text, String wordPrefix, String trigramPrefix) {
+        if (text == null) {
+            return;
+        }
+        for (String word : text.split(" ")) {
+            posting(wordPrefix + word).add(document);
+            if (word.length() >= 3 && !wordNumbers.containsKey(wordPrefix + word)) {
+                int number = wordNumbers.size();
+                String[] current = words;
+                if (number == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[number] = word;
+                words = current;
+                wordNumbers.put(wordPrefix + word, number);
+                for (int i = 0; i + 3 <= word.length(); i++) {
+                    posting(trigramPrefix + word.substring(i, i + 3)).add(number);
+                }
+            }
+        }
+    }
+
+    private PostingList posting(String term) {
+        return postings.computeIfAbsent(term, ignored -> new PostingList());
+    }
+
+    // Adds the score of one query word in one field to every matching document.
+    private void score(Map<Integer, Double> scores, String word, String wordPrefix, String trigramPrefix,
+                       double weight, int total) {
+        PostingList exact = postings.get(wordPrefix + word);
+        int[] exactDocuments = exact == null ? new int[0] : exact.toArray();
+        for (int document : exactDocuments) {
+            scores.merge(document, weight * rarity(exactDocuments.length, total), Double::sum);
+        }
+        if (word.length() < 3) {
+            return;
+        }
+        int[] candidates = null;
+        for (int i = 0; i + 3 <= word.length(); i++) {
+            PostingList trigram = postings.get(trigramPrefix + word.substring(i, i + 3));
+            if (trigram == null) {
+                return;
+            }
+            candidates = candidates == null ? trigram.toArray() : intersect(candidates, trigram.toArray());
+            if (candidates.length == 0) {
+                return;
+            }
+        }
+        // Keep the candidate words that really contain the query word, and collect their books.
+        String[] vocabulary = words;
+        int[] partial = new int[0];
+        for (int candidate : candidates) {
+            if (vocabulary[candidate].contains(word)) {
+                partial = union(partial, postings.get(wordPrefix + vocabulary[candidate]).toArray());
+            }
+        }
+        if (partial.length == 0) {
+            return;
+        }
+        double partialScore = weight * PARTIAL_WEIGHT * rarity(partial.length, total);
+        for (int document : partial) {
+            if (Arrays.binarySearch(exactDocuments, document) < 0) {
+                scores.merge(document, partialScore, Double::sum);
+            }
+        }
+    }
+
+    // Inverse document frequency: rare words count more than common ones.
+    private static double rarity(int matching, int total) {
+        return Math.log(1 + (double) total / matching);
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] common = new int[Math.min(left.length, right.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                common[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    private static int[] union(int[] left, int[] right) {
+        int[] all = new int[left.length + right.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length || j < right.length) {
+            if (j == right.length || (i < left.length && left[i] < right[j])) {
+                all[count++] = left[i++];
+            } else if (i == left.length || left[i] > right[j]) {
+                all[count++] = right[j++];
+            } else {
+                all[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    // Keeps the best scores in a bounded heap whose head is the weakest kept match.
+    private long[] top(Map<Integer, Double> scores, int limit) {
+        Comparator<Map.Entry<Integer, Double>> weakestFirst = (left, right) -> {
+            int byScore = Double.compare(left.getValue(), right.getValue());
+            return byScore != 0 ? byScore : Integer.compare(right.getKey(), left.getKey());
+        };
+        PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(weakestFirst);
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(best);
+        ranked.sort(weakestFirst.reversed());
+        long[] currentKeys = keys;
+        long[] found = new long[ranked.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = currentKeys[ranked.get(i).getKey()];
+        }
+        return found;
+    }
+}
@@ -0,0 +1,34 @@
+package ac.il.bgu.qa.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking calls of the adapters in {@link AsyncDatabaseService}, {@link AsyncReviewService} and
+ * {@link AsyncNotificationService} on an executor.
+ */
+final class AsyncCalls {
+
+    private AsyncCalls() {
+    }
+
+    /**
+     * Runs a call on an executor. A call the executor rejects fails the returned stage instead of the caller.
+     *
+     * @param call     The blocking call.
+     * @param executor The executor to run the call on.
+     * @return A stage completing with the result of the call.
+     */
+    static <T> CompletionStage<T> supply(Supplier<T> call, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface to the database of books and users, for the operations of
+ * {@link ac.il.bgu.qa.AsyncLibrary}. Each method returns at once, and its stage completes with the result
+ * {@link DatabaseService} would return, or exceptionally with the exception it would throw.
+ */
+public interface AsyncDatabaseService {
+
+    /**
+     * Fetches a book by its ISBN.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return A stage completing with the book, or with null if it does not exist.
+     */
+    CompletionStage<Book> getBookByISBN(String ISBN);
+
+    /**
+     * Fetches a book and the user who asked for it, see {@link DatabaseService#loadContext(String, String)}.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The unique identifier for the user, or null to look the book up only.
+     * @return A stage completing with the book and the user, either of which may be null.
+     */
+    CompletionStage<BookContext> loadContext(String ISBN, String userId);
+
+    /**
+     * Borrows a book for a user, see {@link DatabaseService#tryBorrow(String, String)}.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The unique identifier for the user.
+     * @return A stage completing with the outcome of the loan.
+     */
+    CompletionStage<LoanResult> tryBorrow(String ISBN, String userId);
+
+    /**
+     * Returns a book, see {@link DatabaseService#tryReturn(String)}.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return A stage completing with the outcome of the return.
+     */
+    CompletionStage<LoanResult> tryReturn(String ISBN);
+
+    /**
+     * Adapts a blocking database service, running each call on an executor.
+     * The calls still block a thread of the executor, but no longer the caller.
+     * A call the executor rejects fails its stage with a {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param databaseService The blocking database service.
+     * @param executor        The executor to run the calls on.
+     * @return The non-blocking database service.
+     */
+    static AsyncDatabaseService of(DatabaseService databaseService, Executor executor) {
+        if (databaseService == null || executor == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        return new AsyncDatabaseService() {
+            @Override
+            public CompletionStage<Book> getBookByISBN(String ISBN) {
+                return AsyncCalls.supply(() -> databaseService.getBookByISBN(ISBN), executor);
+            }
+
+            @Override
+            public CompletionStage<BookContext> loadContext(String ISBN, String userId) {
+                return AsyncCalls.supply(() -> databaseService.loadContext(ISBN, userId), executor);
+            }
+
+            @Override
+            public CompletionStage<LoanResult> tryBorrow(String ISBN, String userId) {
+                return AsyncCalls.supply(() -> databaseService.tryBorrow(ISBN, userId), executor);
+            }
+
+            @Override
+            public CompletionStage<LoanResult> tryReturn(String ISBN) {
+                return AsyncCalls.supply(() -> databaseService.tryReturn(ISBN), executor);
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface to a service responsible for notifying users.
+ * A {@link NotificationService} that also implements this interface is called through it by
+ * {@link ac.il.bgu.qa.AsyncLibrary}; any other is adapted with {@link #of(NotificationService, Executor)}.
+ */
+public interface AsyncNotificationService {
+
+    /**
+     * Sends a notification message to a specific user.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     * @return A stage completing once the message is sent, or exceptionally with a {@link NotificationException}
+     *         if there's an issue sending it.
+     */
+    CompletionStage<Void> notifyUserAsync(String userId, String message);
+
+    /**
+     * Adapts a blocking notification service, sending on an executor.
+     * A call the executor rejects fails its stage with a {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param notificationService The blocking notification service.
+     * @param executor            The executor to send on.
+     * @return The non-blocking notification service.
+     */
+    static AsyncNotificationService of(NotificationService notificationService, Executor executor) {
+        if (notificationService == null || executor == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        if (notificationService instanceof AsyncNotificationService) {
+            return (AsyncNotificationService) notificationService;
+        }
+        return (userId, message) -> AsyncCalls.supply(() -> {
+            notificationService.notifyUser(userId, message);
+            return null;
+        }, executor);
+    }
+}
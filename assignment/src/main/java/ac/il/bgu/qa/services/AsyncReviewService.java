@@ -0,0 +1,52 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface to a service that retrieves book reviews.
+ */
+public interface AsyncReviewService {
+
+    /**
+     * Fetches the list of reviews for a book based on its ISBN.
+     *
+     * @param ISBN The International Standard Book Number (ISBN) of the book.
+     * @return A stage completing with the reviews of the book, or exceptionally with a {@link ReviewException}
+     *         if there's an issue fetching them.
+     */
+    CompletionStage<List<String>> getReviewsForBook(String ISBN);
+
+    /**
+     * Closes the review service, performing any necessary cleanup operations.
+     */
+    void close();
+
+    /**
+     * Adapts a blocking review service, fetching reviews on an executor. Closing is done on the caller's thread.
+     * A call the executor rejects fails its stage with a {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param reviewService The blocking review service.
+     * @param executor      The executor to fetch reviews on.
+     * @return The non-blocking review service.
+     */
+    static AsyncReviewService of(ReviewService reviewService, Executor executor) {
+        if (reviewService == null || executor == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        return new AsyncReviewService() {
+            @Override
+            public CompletionStage<List<String>> getReviewsForBook(String ISBN) {
+                return AsyncCalls.supply(() -> reviewService.getReviewsForBook(ISBN), executor);
+            }
+
+            @Override
+            public void close() {
+                reviewService.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,293 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.index.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * A {@link DatabaseService} decorator that answers lookups of books that do not exist
+ * without querying the underlying database, using a {@link BloomFilter} over the ISBNs of the catalog.
+ * <p>
+ * This mostly pays off for {@link ac.il.bgu.qa.Library#addBook(Book)}, whose duplicate check misses
+ * for almost every book of an import. A lookup the filter cannot rule out goes to the database as usual.
+ * <p>
+ * The filter only knows the books added through this decorator. When the underlying database already
+ * holds books, pass their ISBNs to the constructor, or call {@link #rebuild()} if the database can scan its
+ * catalog, see {@link CatalogScan}. Rebuilding with a larger expected size also lowers the false positive
+ * rate once the catalog outgrows the filter. A rebuild reads the catalog from the database itself while
+ * holding off additions, so a book added around a rebuild is always in the new filter.
+ */
+public class BloomFilterDatabaseService extends ForwardingDatabaseService {
+
+    private final double falsePositiveRate;
+
+    // The filter answering lookups.
+    private volatile BloomFilter filter;
+
+    // Shared by additions, held exclusively by a rebuild so that no addition falls between two filters.
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    // Lookups answered by the filter alone, and lookups the filter let through that found nothing.
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Constructs the decorator in front of an empty database.
+     *
+     * @param delegate           The database service to filter lookups for.
+     * @param expectedInsertions The number of books the catalog is expected to hold.
+     * @param falsePositiveRate  The false positive rate wanted at that size, between 0 and 1.
+     */
+    public BloomFilterDatabaseService(DatabaseService delegate, long expectedInsertions, double falsePositiveRate) {
+        this(delegate, expectedInsertions, falsePositiveRate, Collections.<String>emptyList());
+    }
+
+    /**
+     * Constructs the decorator in front of a database that already holds books.
+     *
+     * @param delegate           The database service to filter lookups for.
+     * @param expectedInsertions The number of books the catalog is expected to hold.
+     * @param falsePositiveRate  The false positive rate wanted at that size, between 0 and 1.
+     * @param existingISBNs      The ISBNs of every book already in the database.
+     */
+    public BloomFilterDatabaseService(DatabaseService delegate, long expectedInsertions, double falsePositiveRate,
+                                      Iterable<String> existingISBNs) {
+        super(delegate);
+        this.falsePositiveRate = falsePositiveRate;
+        BloomFilter initial = new BloomFilter(expectedInsertions, falsePositiveRate);
+        for (String ISBN : existingISBNs) {
+            long key = IsbnCodec.pack(ISBN);
+            if (key != IsbnCodec.INVALID) {
+                initial.put(key);
+            }
+        }
+        this.filter = initial;
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key != IsbnCodec.INVALID && !filter.mightContain(key)) {
+            negatives.increment();
+            return null;
+        }
+        return countFalsePositive(delegate.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        if (!filter.mightContain(ISBN)) {
+            negatives.increment();
+            return null;
+        }
+        return countFalsePositive(delegate.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public BookContext loadContext(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key != IsbnCodec.INVALID && !filter.mightContain(key)) {
+            negatives.increment();
+            return new BookContext(null, null);
+        }
+        BookContext context = delegate.loadContext(ISBN, userId);
+        countFalsePositive(context.getBook());
+        return context;
+    }
+
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key != IsbnCodec.INVALID && !filter.mightContain(key)) {
+            negatives.increment();
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        return delegate.tryBorrow(ISBN, userId);
+    }
+
+    /**
+     * Fetches several books, querying the underlying database only for the ISBNs the filter cannot rule out.
+     */
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        BloomFilter current = filter;
+        List<String> candidates = new ArrayList<>();
+        for (String ISBN : ISBNs) {
+            long key = IsbnCodec.pack(ISBN);
+            if (key != IsbnCodec.INVALID && !current.mightContain(key)) {
+                negatives.increment();
+            } else {
+                candidates.add(ISBN);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Book> found = delegate.getBooksByISBN(candidates);
+        falsePositives.add(candidates.size() - found.size());
+        return found;
+    }
+
+    /**
+     * Adds a book. The ISBN enters the filter before the book enters the database,
+     * so a concurrent lookup can never be told that a stored book does not exist.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        rebuildLock.readLock().lock();
+        try {
+            remember(ISBN);
+            delegate.addBook(ISBN, book);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        rebuildLock.readLock().lock();
+        try {
+            for (String ISBN : books.keySet()) {
+                remember(ISBN);
+            }
+            return delegate.addBooks(books);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the filter with a new one sized for the expected number of books and filled with the ISBNs
+     * of every book the underlying database holds. Additions wait until the new filter is complete, while
+     * lookups keep using the old filter.
+     *
+     * @param expectedInsertions The number of books the catalog is expected to hold.
+     * @throws UnsupportedOperationException If the underlying database cannot scan its catalog.
+     */
+    public void rebuild(long expectedInsertions) {
+        CatalogScan scan = catalogScan();
+        BloomFilter fresh = new BloomFilter(expectedInsertions, falsePositiveRate);
+        rebuildLock.writeLock().lock();
+        try {
+            fill(fresh, scan);
+            filter = fresh;
+            negatives.reset();
+            falsePositives.reset();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the filter with a new one sized for twice the books the underlying database holds,
+     * leaving room for the catalog to grow, and filled with their ISBNs.
+     *
+     * @throws UnsupportedOperationException If the underlying database cannot scan its catalog.
+     */
+    public void rebuild() {
+        CatalogScan scan = catalogScan();
+        rebuildLock.writeLock().lock();
+        try {
+            long count;
+            try (Stream<Book> books = scan.streamBooks()) {
+                count = books.count();
+            }
+            BloomFilter fresh = new BloomFilter(Math.max(2L * count, 1024), falsePositiveRate);
+            fill(fresh, scan);
+            filter = fresh;
+            negatives.reset();
+            falsePositives.reset();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of lookups answered by the filter alone, without querying the database.
+     *
+     * @return The number of lookups the filter ruled out.
+     */
+    public long getNegativeCount() {
+        return negatives.sum();
+    }
+
+    /**
+     * Retrieves the number of lookups the filter let through that found no book.
+     *
+     * @return The number of false positives.
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Retrieves the share of lookups of absent books that the filter failed to rule out,
+     * as observed since the filter was built.
+     *
+     * @return The observed false positive rate, between 0 and 1, or 0 if no absent book was looked up.
+     */
+    public double getObservedFalsePositiveRate() {
+        long falsePositiveCount = falsePositives.sum();
+        long absent = falsePositiveCount + negatives.sum();
+        return absent == 0 ? 0 : (double) falsePositiveCount / absent;
+    }
+
+    /**
+     * Estimates the false positive rate of the filter from how full it currently is.
+     *
+     * @return The expected false positive rate, between 0 and 1.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return filter.expectedFalsePositiveRate();
+    }
+
+    /**
+     * Estimates the number of books the filter holds.
+     *
+     * @return The estimated number of ISBNs in the filter.
+     */
+    public long getApproximateBookCount() {
+        return filter.approximateElementCount();
+    }
+
+    private CatalogScan catalogScan() {
+        CatalogScan scan = CatalogScan.find(delegate);
+        if (scan == null) {
+            throw new UnsupportedOperationException("Catalog scans are not supported.");
+        }
+        return scan;
+    }
+
+    // Puts the ISBN of every book of the catalog into a filter, while the rebuild lock holds off additions.
+    private static void fill(BloomFilter fresh, CatalogScan scan) {
+        try (Stream<Book> books = scan.streamBooks()) {
+            books.mapToLong(book -> IsbnCodec.pack(book.getISBN()))
+                    .filter(key -> key != IsbnCodec.INVALID)
+                    .forEach(fresh::put);
+        }
+    }
+
+    private void remember(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key != IsbnCodec.INVALID) {
+            filter.put(key);
+        }
+    }
+
+    private Book countFalsePositive(Book book) {
+        if (book == null) {
+            falsePositives.increment();
+        }
+        return book;
+    }
+}
@@ -0,0 +1,45 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+/**
+ * Represents a book and a user fetched from the database together, see {@link DatabaseService#loadContext(String, String)}.
+ */
+public final class BookContext {
+
+    // The book, or null if it does not exist in the database.
+    private final Book book;
+
+    // The user, or null if they are not registered or were not looked up.
+    private final User user;
+
+    /**
+     * Constructs a context from the results of the lookups.
+     *
+     * @param book The book found, or null.
+     * @param user The user found, or null.
+     */
+    public BookContext(Book book, User user) {
+        this.book = book;
+        this.user = user;
+    }
+
+    /**
+     * Retrieves the book of the context.
+     *
+     * @return The book, or null if the book does not exist in the database.
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Retrieves the user of the context.
+     *
+     * @return The user, or null if the user is not registered or the book does not exist.
+     */
+    public User getUser() {
+        return user;
+    }
+}
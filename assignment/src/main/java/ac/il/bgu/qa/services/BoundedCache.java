@@ -0,0 +1,243 @@
+package ac.il.bgu.qa.services;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded, thread-safe cache with frequency-aware eviction, shared by the caching decorators.
+ * <p>
+ * Entries are kept in least-recently-used order. When the cache is full, a new entry is only
+ * admitted if its key was requested more often than the keys of the entries it would evict, as
+ * estimated by a small count-min sketch. One-off lookups therefore cannot flush popular entries.
+ * <p>
+ * The cache is bounded either by its number of entries or, given a weigher, by the total weight of its
+ * values, in which case a heavy value may displace several light ones.
+ * <p>
+ * Loads race with invalidations: a value loaded before an invalidation may already be stale.
+ * Callers take the {@link #generation(Object)} of the key before loading and hand it to
+ * {@link #put(Object, Object, long)}, which drops the value if the key was invalidated in between.
+ * Generations are kept per stripe of keys, so invalidating one key only rarely discards the load of another.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+final class BoundedCache<K, V> {
+
+    private final long maximumWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final LinkedHashMap<K, V> entries;
+    private final FrequencySketch sketch;
+    private long weight;
+
+    // Number of stripes of keys that share an invalidation generation.
+    private static final int GENERATION_STRIPES = 256;
+
+    // Bumped by the invalidation of a key of the stripe, or of every key, so that loads started before it
+    // are not cached. Generations only grow, so their sum changes whenever either of them does.
+    private final long[] generations = new long[GENERATION_STRIPES];
+    private long generation;
+    private long evictions;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maximumSize The largest number of entries the cache holds.
+     */
+    BoundedCache(int maximumSize) {
+        this(maximumSize, value -> 1L, maximumSize);
+    }
+
+    /**
+     * Constructs an empty cache bounded by the total weight of its values.
+     *
+     * @param maximumWeight The largest total weight the cache holds.
+     * @param weigher       Computes the weight of a value, never negative.
+     * @param expectedSize  The number of entries the cache is expected to hold, to size the frequency sketch.
+     */
+    BoundedCache(long maximumWeight, ToLongFunction<? super V> weigher, int expectedSize) {
+        if (maximumWeight <= 0 || expectedSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch(expectedSize);
+    }
+
+    /**
+     * Looks a key up, recording the request in the frequency sketch.
+     *
+     * @param key The key.
+     * @return The cached value, or null if the key is not cached.
+     */
+    synchronized V get(K key) {
+        sketch.increment(key);
+        return entries.get(key);
+    }
+
+    /**
+     * Retrieves the current invalidation generation of a key, to be passed to {@link #put(Object, Object, long)}.
+     *
+     * @param key The key about to be loaded.
+     * @return The current generation of the key.
+     */
+    synchronized long generation(K key) {
+        return generation + generations[stripeOf(key)];
+    }
+
+    /**
+     * Caches a loaded value, unless the key was invalidated since the load started
+     * or the key is not popular enough to displace the eviction candidate.
+     *
+     * @param key        The key.
+     * @param value      The value loaded for the key.
+     * @param generation The generation of the key taken before the value was loaded.
+     */
+    synchronized void put(K key, V value, long generation) {
+        if (generation != generation(key)) {
+            return;
+        }
+        long added = weigher.applyAsLong(value);
+        if (added > maximumWeight) {
+            return;
+        }
+        V previous = entries.get(key);
+        long needed = weight - (previous == null ? 0 : weigher.applyAsLong(previous)) + added - maximumWeight;
+        if (needed > 0 && previous == null) {
+            // Pick the eldest entries that free enough weight, and admit the new one only if it beats them all.
+            List<K> victims = new ArrayList<>();
+            int frequency = sketch.frequency(key);
+            for (Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator(); needed > 0; ) {
+                Map.Entry<K, V> victim = eldest.next();
+                if (frequency <= sketch.frequency(victim.getKey())) {
+                    return;
+                }
+                victims.add(victim.getKey());
+                needed -= weigher.applyAsLong(victim.getValue());
+            }
+            for (K victim : victims) {
+                weight -= weigher.applyAsLong(entries.remove(victim));
+                evictions++;
+            }
+        }
+        previous = entries.put(key, value);
+        weight += added - (previous == null ? 0 : weigher.applyAsLong(previous));
+        // A heavier value replacing a lighter one may overflow; evict the eldest others to make room.
+        for (Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator(); weight > maximumWeight; ) {
+            Map.Entry<K, V> victim = eldest.next();
+            if (!victim.getKey().equals(key)) {
+                weight -= weigher.applyAsLong(victim.getValue());
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Removes a key from the cache and discards the loads of the key still in flight.
+     *
+     * @param key The key.
+     */
+    synchronized void invalidate(K key) {
+        generations[stripeOf(key)]++;
+        V removed = entries.remove(key);
+        if (removed != null) {
+            weight -= weigher.applyAsLong(removed);
+        }
+    }
+
+    /**
+     * Removes every entry from the cache and discards every load still in flight.
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        weight = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    private static int stripeOf(Object key) {
+        int hash = key.hashCode() * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters estimating how often each key was requested.
+     * Counters are halved periodically so that the estimate follows recent popularity.
+     */
+    private static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb1c2d3e5, 0x5bd1e995, 0x27d4eb2f};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24)) - 1) << 1;
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(16, Math.min(maximumSize, 1 << 24));
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            return hash ^ (hash >>> 11);
+        }
+    }
+}
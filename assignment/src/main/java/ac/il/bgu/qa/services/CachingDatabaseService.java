@@ -0,0 +1,320 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A read-through cache in front of another {@link DatabaseService}.
+ * <p>
+ * Books and users found by a lookup are kept in memory, keyed by the packed ISBN and the numeric
+ * user Id, so repeated lookups of the same book or user, in any hyphenation, are served without a
+ * round-trip. Each cache is bounded and evicts by frequency as well as recency, see {@link BoundedCache}.
+ * Lookups that find nothing are not cached.
+ * <p>
+ * Changes made through this decorator invalidate the affected entries: addBook, borrowBook, returnBook,
+ * tryBorrow and tryReturn invalidate the book, registerUser invalidates the user. Changes made to the
+ * underlying database without going through this decorator are not seen until {@link #invalidateAll()} is called.
+ */
+public class CachingDatabaseService extends ForwardingDatabaseService {
+
+    private final BoundedCache<Long, Book> books;
+    private final BoundedCache<Long, User> users;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a cache in front of a database service.
+     *
+     * @param delegate    The database service to cache.
+     * @param maximumSize The largest number of books, and separately of users, kept in memory.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maximumSize) {
+        super(delegate);
+        this.books = new BoundedCache<>(maximumSize);
+        this.users = new BoundedCache<>(maximumSize);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? delegate.getBookByISBN(ISBN) : cachedBook(key, ISBN);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return cachedBook(ISBN, null);
+    }
+
+    /**
+     * Fetches several books, serving the cached ones from memory
+     * and the others with a single call to the underlying database.
+     */
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        Map<Long, Long> generations = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            long key = IsbnCodec.pack(ISBN);
+            Book book = key == IsbnCodec.INVALID ? null : books.get(key);
+            if (book != null) {
+                hits.increment();
+                found.put(ISBN, book);
+            } else {
+                misses.increment();
+                missing.add(ISBN);
+                if (key != IsbnCodec.INVALID) {
+                    generations.put(key, books.generation(key));
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, Book> entry : delegate.getBooksByISBN(missing).entrySet()) {
+                Long generation = generations.get(IsbnCodec.pack(entry.getKey()));
+                if (generation != null && entry.getValue() != null) {
+                    books.put(IsbnCodec.pack(entry.getKey()), entry.getValue(), generation);
+                }
+                found.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.parse(userId);
+        return key == UserId.INVALID ? delegate.getUserById(userId) : cachedUser(key, userId);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return cachedUser(userId, null);
+    }
+
+    /**
+     * Fetches a book and a user together, serving each from memory when cached.
+     * The underlying database is asked for both in one call only when neither is cached.
+     */
+    @Override
+    public BookContext loadContext(String ISBN, String userId) {
+        long bookKey = IsbnCodec.pack(ISBN);
+        long userKey = userId == null ? UserId.INVALID : UserId.parse(userId);
+        if (bookKey == IsbnCodec.INVALID || (userId != null && userKey == UserId.INVALID)) {
+            return delegate.loadContext(ISBN, userId);
+        }
+        Book book = books.get(bookKey);
+        User user = userId == null ? null : users.get(userKey);
+        if (book == null && user == null) {
+            misses.increment();
+            if (userId != null) {
+                misses.increment();
+            }
+            long bookGeneration = books.generation(bookKey);
+            long userGeneration = users.generation(userKey);
+            BookContext context = delegate.loadContext(ISBN, userId);
+            if (context.getBook() != null) {
+                books.put(bookKey, context.getBook(), bookGeneration);
+            }
+            if (context.getUser() != null) {
+                users.put(userKey, context.getUser(), userGeneration);
+            }
+            return context;
+        }
+        if (book != null) {
+            hits.increment();
+        } else {
+            book = cachedBook(bookKey, ISBN);
+        }
+        if (user != null) {
+            hits.increment();
+        } else if (book != null && userId != null) {
+            user = cachedUser(userKey, userId);
+        }
+        return new BookContext(book, user);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        try {
+            delegate.addBook(ISBN, book);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        try {
+            return delegate.addBooks(books);
+        } finally {
+            for (String ISBN : books.keySet()) {
+                invalidateBook(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        try {
+            delegate.registerUser(id, user);
+        } finally {
+            invalidateUser(id);
+        }
+    }
+
+    @Override
+    public Map<String, RuntimeException> registerUsers(Map<String, User> users) {
+        try {
+            return delegate.registerUsers(users);
+        } finally {
+            for (String id : users.keySet()) {
+                invalidateUser(id);
+            }
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } finally {
+            books.invalidate(ISBN);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        try {
+            delegate.returnBook(ISBN);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        try {
+            delegate.returnBook(ISBN);
+        } finally {
+            books.invalidate(ISBN);
+        }
+    }
+
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        try {
+            return delegate.tryBorrow(ISBN, userId);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        try {
+            return delegate.tryReturn(ISBN);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    /**
+     * Drops every cached book and user, for example after the underlying database was changed directly.
+     */
+    public void invalidateAll() {
+        books.invalidateAll();
+        users.invalidateAll();
+    }
+
+    /**
+     * Retrieves the number of lookups served from memory.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of lookups passed on to the underlying database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the number of entries evicted to make room for more popular ones.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return books.evictions() + users.evictions();
+    }
+
+    // Serves a book from the cache, loading it under the ISBN as given when there is one.
+    private Book cachedBook(long key, String ISBN) {
+        Book book = books.get(key);
+        if (book != null) {
+            hits.increment();
+            return book;
+        }
+        misses.increment();
+        long generation = books.generation(key);
+        book = ISBN != null ? delegate.getBookByISBN(ISBN) : delegate.getBookByISBN(key);
+        if (book != null) {
+            books.put(key, book, generation);
+        }
+        return book;
+    }
+
+    // Serves a user from the cache, loading them under the Id as given when there is one.
+    private User cachedUser(long key, String userId) {
+        User user = users.get(key);
+        if (user != null) {
+            hits.increment();
+            return user;
+        }
+        misses.increment();
+        long generation = users.generation(key);
+        user = userId != null ? delegate.getUserById(userId) : delegate.getUserById(key);
+        if (user != null) {
+            users.put(key, user, generation);
+        }
+        return user;
+    }
+
+    private void invalidateBook(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key != IsbnCodec.INVALID) {
+            books.invalidate(key);
+        }
+    }
+
+    private void invalidateUser(String id) {
+        long key = UserId.parse(id);
+        if (key != UserId.INVALID) {
+            users.invalidate(key);
+        }
+    }
+}
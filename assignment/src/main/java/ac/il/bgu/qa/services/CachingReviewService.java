@@ -0,0 +1,329 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A read-through cache of the reviews of each book, in front of another {@link ReviewService}.
+ * <p>
+ * Reviews are keyed by the packed ISBN, so a book is served from memory in any hyphenation. Each list is
+ * kept for a fixed time to live; after that it is fetched again. Given a refresh executor, a list that is
+ * requested after its refresh time but before it expires is still served from memory while a fresh copy is
+ * fetched in the background, so popular books never wait on the remote service. The cache is bounded by the
+ * total size of the review text it holds and evicts by frequency as well as recency, see {@link BoundedCache}.
+ * Failed fetches and books without reviews are not cached. Concurrent misses on one book share a single fetch.
+ * <p>
+ * The underlying service is shared by requests and background refreshes, so this cache never closes it; its
+ * owner closes it once the cache is no longer used. Closing this decorator has no effect, so the cache outlives
+ * {@link ac.il.bgu.qa.Library}, which closes its review service after each call.
+ */
+public class CachingReviewService implements ReviewService {
+
+    private final ReviewService delegate;
+    private final BoundedCache<Long, Reviews> reviews;
+    private final long timeToLiveNanos;
+    private final long refreshAfterNanos;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+
+    // Books whose reviews are being refreshed in the background.
+    private final Set<Long> refreshing = ConcurrentHashMap.newKeySet();
+
+    // Fetches running on a miss, by book, which other misses on the same book wait for.
+    private final ConcurrentHashMap<Long, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    /**
+     * Constructs a cache that fetches the reviews of a book again once they expire.
+     *
+     * @param delegate     The review service to cache.
+     * @param maximumBytes The largest total size of the cached review text, two bytes per character.
+     * @param timeToLive   How long the reviews of a book are served from memory.
+     * @param unit         The unit of the time to live.
+     */
+    public CachingReviewService(ReviewService delegate, long maximumBytes, long timeToLive, TimeUnit unit) {
+        this(delegate, maximumBytes, timeToLive, timeToLive, unit, null);
+    }
+
+    /**
+     * Constructs a cache that also refreshes the reviews of a book ahead of their expiry.
+     *
+     * @param delegate        The review service to cache.
+     * @param maximumBytes    The largest total size of the cached review text, two bytes per character.
+     * @param timeToLive      How long the reviews of a book are served from memory.
+     * @param refreshAfter    How long after a fetch a request triggers a background refresh, at most the time to live.
+     * @param unit            The unit of both times.
+     * @param refreshExecutor The executor to refresh on, or null to never refresh ahead.
+     */
+    public CachingReviewService(ReviewService delegate, long maximumBytes, long timeToLive, long refreshAfter,
+                                TimeUnit unit, Executor refreshExecutor) {
+        this(delegate, maximumBytes, timeToLive, refreshAfter, unit, refreshExecutor, System::nanoTime);
+    }
+
+    CachingReviewService(ReviewService delegate, long maximumBytes, long timeToLive, long refreshAfter,
+                         TimeUnit unit, Executor refreshExecutor, LongSupplier clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        if (timeToLive <= 0 || refreshAfter <= 0 || refreshAfter > timeToLive) {
+            throw new IllegalArgumentException("Invalid time to live.");
+        }
+        this.delegate = delegate;
+        this.reviews = new BoundedCache<>(maximumBytes, Reviews::weight,
+                (int) Math.max(1, Math.min(maximumBytes / 1024, 1 << 20)));
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.refreshAfterNanos = unit.toNanos(refreshAfter);
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Fetches the reviews of a book from memory, or from the underlying service if they are not cached or expired.
+     *
+     * @throws ReviewException If the reviews are not cached and the underlying service fails to fetch them.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long key = IsbnCodec.pack(ISBN);
+        if (key == IsbnCodec.INVALID) {
+            return load(ISBN);
+        }
+        Reviews cached = reviews.get(key);
+        long now = clock.getAsLong();
+        if (cached != null && now - cached.loadedAt < timeToLiveNanos) {
+            hits.increment();
+            if (now - cached.loadedAt >= refreshAfterNanos) {
+                refreshAhead(key, ISBN);
+            }
+            return cached.list;
+        }
+        misses.increment();
+        CompletableFuture<List<String>> flight = new CompletableFuture<>();
+        CompletableFuture<List<String>> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            long generation = reviews.generation(key);
+            List<String> loaded = load(ISBN);
+            cache(key, loaded, generation);
+            flight.complete(loaded);
+            return loaded;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Has no effect: the underlying service is shared by every fetch, and its owner closes it.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Discards the cached reviews of a book, for example after a review was added.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidate(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key != IsbnCodec.INVALID) {
+            reviews.invalidate(key);
+        }
+    }
+
+    /**
+     * Discards every cached review.
+     */
+    public void invalidateAll() {
+        reviews.invalidateAll();
+    }
+
+    /**
+     * Retrieves the fraction of requests served from memory.
+     *
+     * @return The hit ratio, between 0 and 1, or 0 if nothing was requested yet.
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    /**
+     * Retrieves the number of requests served from memory.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of requests that had to fetch the reviews.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the number of fetches from the underlying service, including refreshes and failed fetches.
+     *
+     * @return The number of fetches.
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * Retrieves the number of fetches from the underlying service that failed.
+     *
+     * @return The number of failed fetches.
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Retrieves the mean time a fetch from the underlying service took.
+     *
+     * @param unit The unit of the result.
+     * @return The average fetch time, or 0 if nothing was fetched yet.
+     */
+    public long getAverageLoadTime(TimeUnit unit) {
+        long count = loads.sum();
+        return count == 0 ? 0 : unit.convert(loadNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the number of refreshes started ahead of expiry.
+     *
+     * @return The number of refreshes.
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Retrieves the number of review lists evicted to stay within the size bound.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return reviews.evictions();
+    }
+
+    /**
+     * Retrieves the total size of the cached review text.
+     *
+     * @return The size in bytes, two per character.
+     */
+    public long getWeightedSize() {
+        return reviews.weight();
+    }
+
+    // Waits for the fetch another miss started, failing the same way it did.
+    private static List<String> await(CompletableFuture<List<String>> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Fetches the reviews from the underlying service, timing the fetch.
+    private List<String> load(String ISBN) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getReviewsForBook(ISBN);
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loadNanos.add(System.nanoTime() - start);
+            loads.increment();
+        }
+    }
+
+    private void cache(long key, List<String> loaded, long generation) {
+        if (loaded != null && !loaded.isEmpty()) {
+            reviews.put(key, new Reviews(loaded, clock.getAsLong()), generation);
+        }
+    }
+
+    // Fetches the reviews again in the background, unless a refresh of the book is already running.
+    private void refreshAhead(long key, String ISBN) {
+        if (refreshExecutor == null || !refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    long generation = reviews.generation(key);
+                    cache(key, load(ISBN), generation);
+                } catch (RuntimeException e) {
+                    // Keep serving the cached reviews until they expire.
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+            refreshes.increment();
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * The reviews of a book and when they were fetched.
+     */
+    private static final class Reviews {
+
+        final List<String> list;
+        final long loadedAt;
+        final long weight;
+
+        Reviews(List<String> list, long loadedAt) {
+            this.list = Collections.unmodifiableList(list);
+            this.loadedAt = loadedAt;
+            long chars = 0;
+            for (String review : list) {
+                chars += review == null ? 0 : review.length();
+            }
+            this.weight = 2 * chars;
+        }
+
+        long weight() {
+            return weight;
+        }
+    }
+}
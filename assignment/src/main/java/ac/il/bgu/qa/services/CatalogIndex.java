@@ -0,0 +1,106 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Provides the lookups of a catalog beyond a single ISBN or user Id, for database services that keep indexes
+ * over their books and loans, such as {@link IndexedDatabaseService}.
+ */
+public interface CatalogIndex {
+
+    /**
+     * Fetches every book by an author. The name is matched ignoring case and the punctuation between its parts.
+     *
+     * @param author The name of the author.
+     * @return The books by the author, in ascending order of ISBN. Empty if there are none.
+     */
+    List<Book> getBooksByAuthor(String author);
+
+    /**
+     * Fetches every book with a title. The title is matched ignoring case and punctuation.
+     *
+     * @param title The title of the book.
+     * @return The books with the title, in ascending order of ISBN. Empty if there are none.
+     */
+    List<Book> getBooksByTitle(String title);
+
+    /**
+     * Searches the titles and authors of the catalog for words or parts of words.
+     *
+     * @param query The words to look for.
+     * @param limit The largest number of books to return.
+     * @return The matching books, most relevant first.
+     */
+    List<Book> searchBooks(String query, int limit);
+
+    /**
+     * Fetches every book currently on loan to a user.
+     *
+     * @param userId The unique identifier for the user.
+     * @return The books on loan to the user, in ascending order of ISBN. Empty if there are none.
+     */
+    List<Book> getBooksBorrowedBy(String userId);
+
+    /**
+     * Fetches the user who currently has a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The user who borrowed the book, or null if the book is not on loan.
+     */
+    User getBorrower(String ISBN);
+
+    /**
+     * Streams the books whose ISBN starts with a prefix, such as the prefix, group and registrant of a publisher.
+     * The books are fetched lazily as the stream is consumed.
+     *
+     * @param prefix The leading digits of the ISBNs, hyphens allowed, for example "978-0-306".
+     * @return The books starting with the prefix, in ascending order of ISBN.
+     */
+    Stream<Book> getBooksByISBNPrefix(String prefix);
+
+    /**
+     * Streams the books whose ISBN lies between two ISBNs, both included.
+     * The books are fetched lazily as the stream is consumed.
+     *
+     * @param fromISBN The lowest ISBN to return.
+     * @param toISBN   The highest ISBN to return.
+     * @return The books in the range, in ascending order of ISBN.
+     */
+    Stream<Book> getBooksByISBNRange(String fromISBN, String toISBN);
+
+    /**
+     * Counts the books of the catalog that are not on loan.
+     *
+     * @return The number of books available to borrow.
+     */
+    int countAvailableBooks();
+
+    /**
+     * Fetches every book by an author that is not on loan.
+     *
+     * @param author The name of the author.
+     * @return The available books by the author, in ascending order of ISBN. Empty if there are none.
+     */
+    List<Book> getAvailableBooksByAuthor(String author);
+
+    /**
+     * Finds the catalog index of a database service, looking through the decorators in front of it.
+     *
+     * @param databaseService The database service.
+     * @return The first service of the chain that is a catalog index, or null if there is none.
+     */
+    static CatalogIndex find(DatabaseService databaseService) {
+        for (DatabaseService service = databaseService; service != null; ) {
+            if (service instanceof CatalogIndex) {
+                return (CatalogIndex) service;
+            }
+            service = service instanceof ForwardingDatabaseService
+                    ? ((ForwardingDatabaseService) service).getDelegate() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.stream.Stream;
+
+/**
+ * Provides full scans of the books and users of a database service, for example to export them.
+ */
+public interface CatalogScan {
+
+    /**
+     * Streams every book of the catalog.
+     * The books are fetched lazily as the stream is consumed and the stream splits for parallel processing,
+     * so the catalog is never held in memory at once. Books added or changed while the stream runs may or
+     * may not be included.
+     *
+     * @return The books of the catalog, in no particular order unless the database documents one.
+     */
+    Stream<Book> streamBooks();
+
+    /**
+     * Streams every registered user, lazily and splittable like {@link #streamBooks()}.
+     *
+     * @return The registered users, in no particular order.
+     */
+    Stream<User> streamUsers();
+
+    /**
+     * Finds the scans of a database service, looking through the decorators in front of it.
+     *
+     * @param databaseService The database service.
+     * @return The first service of the chain that can scan its catalog, or null if there is none.
+     */
+    static CatalogScan find(DatabaseService databaseService) {
+        for (DatabaseService service = databaseService; service != null; ) {
+            if (service instanceof CatalogScan) {
+                return (CatalogScan) service;
+            }
+            service = service instanceof ForwardingDatabaseService
+                    ? ((ForwardingDatabaseService) service).getDelegate() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,532 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.KeyHashing;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A memory-compact, thread-safe implementation of {@link DatabaseService} for very large catalogs.
+ * <p>
+ * Books live in an open-addressing hash table keyed by the packed ISBN. The table is a set of
+ * parallel arrays (keys, titles, authors and borrowers), so a book costs a few array slots plus its
+ * title and author strings, instead of a map entry, a boxed key and a {@link Book} object.
+ * {@link Book} objects are only created when a book is looked up, and every lookup returns a fresh
+ * view reflecting the borrowed state at that moment.
+ * <p>
+ * Reads are optimistic and take no lock unless they race with a write. Writes are serialized.
+ * Loans follow the same rules as {@link ConcurrentDatabaseService}: of concurrent borrows of one
+ * ISBN exactly one succeeds, and of concurrent returns exactly one succeeds.
+ * <p>
+ * Each table holds at most 2^30 slots; adding an entry beyond three quarters of that raises an
+ * {@link IllegalStateException}.
+ */
+public class CompactDatabaseService implements DatabaseService, CatalogScan {
+
+    // Marks a free slot in the key arrays. Packed ISBNs and user Ids are never negative.
+    private static final long EMPTY = -1L;
+
+    // Marks a book that is not on loan in the borrowers array.
+    private static final long NOT_BORROWED = -1L;
+
+    // The table grows once it is this full.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // The largest table; doubling it would overflow the int capacity.
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // Guards every array below; writers hold the write lock, readers validate an optimistic stamp.
+    private final StampedLock lock = new StampedLock();
+
+    // Book table: packed ISBN, title, author and the numeric Id of the borrower per slot.
+    private long[] isbns;
+    private String[] titles;
+    private String[] authors;
+    private long[] borrowers;
+    private int bookCount;
+
+    // User table: numeric user Id and the user per slot.
+    private long[] userIds;
+    private User[] users;
+    private int userCount;
+
+    /**
+     * Constructs an empty database.
+     */
+    public CompactDatabaseService() {
+        this(1024);
+    }
+
+    /**
+     * Constructs an empty database sized for the expected number of books,
+     * so that loading a catalog of that size does not resize the table.
+     *
+     * @param expectedBooks The number of books the database is expected to hold.
+     */
+    public CompactDatabaseService(int expectedBooks) {
+        if (expectedBooks < 0) {
+            throw new IllegalArgumentException("Invalid expected size.");
+        }
+        allocateBooks(capacityFor(expectedBooks));
+        allocateUsers(capacityFor(16));
+    }
+
+    /**
+     * Adds a book to the database. Only the ISBN, title and author of the book are kept.
+     *
+     * @param ISBN The International Standard Book Number identifying the book.
+     * @param book The book to be added.
+     * @throws IllegalArgumentException If the ISBN is invalid or a book with the same ISBN already exists.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        long key = isbnKey(ISBN);
+        long stamp = lock.writeLock();
+        try {
+            insertBook(key, book);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds several books under a single acquisition of the write lock.
+     *
+     * @param books The books to be added, keyed by their ISBN.
+     * @return The books that could not be added, keyed by ISBN, mapped to the exception that rejected them.
+     */
+    @Override
+    public Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        long stamp = lock.writeLock();
+        try {
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                try {
+                    if (entry.getValue() == null) {
+                        throw new IllegalArgumentException("Invalid book.");
+                    }
+                    insertBook(isbnKey(entry.getKey()), entry.getValue());
+                } catch (IllegalArgumentException e) {
+                    failures.put(entry.getKey(), e);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return failures;
+    }
+
+    /**
+     * Registers a user with the database.
+     *
+     * @param id   The unique identifier for the user.
+     * @param user The user to be registered.
+     * @throws IllegalArgumentException If the Id is invalid or a user with the same Id already exists.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        long key = UserId.parse(id);
+        if (key == UserId.INVALID) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (userCount + 1 > userIds.length * LOAD_FACTOR) {
+                resizeUsers(grow(userIds.length));
+            }
+            int slot = slotOf(userIds, key);
+            if (userIds[slot] == key) {
+                throw new IllegalArgumentException("User already exists.");
+            }
+            userIds[slot] = key;
+            users[slot] = user;
+            userCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? null : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        long stamp = lock.tryOptimisticRead();
+        Book book = readBook(ISBN);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                book = readBook(ISBN);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.parse(userId);
+        return key == UserId.INVALID ? null : getUserById(key);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        long stamp = lock.tryOptimisticRead();
+        User user = readUser(userId);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                user = readUser(userId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Records that a book is borrowed by a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @throws BookNotFoundException        If no book has the given ISBN.
+     * @throws UserNotRegisteredException   If no user has the given Id.
+     * @throws BookAlreadyBorrowedException If the book is already on loan.
+     */
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(isbnKey(ISBN), userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        switch (borrow(ISBN, userId)) {
+            case BOOK_NOT_FOUND:
+                throw new BookNotFoundException("Book not found!");
+            case USER_NOT_REGISTERED:
+                throw new UserNotRegisteredException("User not found!");
+            case ALREADY_BORROWED:
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            default:
+        }
+    }
+
+    /**
+     * Borrows a book for a user, checking and recording the loan under a single acquisition of the write lock.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return {@link LoanResult#OK} if the book was borrowed, otherwise the reason it was not.
+     */
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? LoanResult.BOOK_NOT_FOUND : borrow(key, userId);
+    }
+
+    /**
+     * Records that a borrowed book was returned.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @throws BookNotFoundException    If no book has the given ISBN.
+     * @throws BookNotBorrowedException If the book is not on loan.
+     */
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(isbnKey(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        switch (giveBack(ISBN)) {
+            case BOOK_NOT_FOUND:
+                throw new BookNotFoundException("Book not found!");
+            case NOT_BORROWED:
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            default:
+        }
+    }
+
+    /**
+     * Returns a book, checking and clearing the loan under a single acquisition of the write lock.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return {@link LoanResult#OK} if the book was returned, otherwise the reason it was not.
+     */
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? LoanResult.BOOK_NOT_FOUND : giveBack(key);
+    }
+
+    /**
+     * Streams every book by walking the slots of the ISBN table in place, materializing each book only when the
+     * stream reaches it. The stream splits by slot range for parallel processing. It walks the table as it was
+     * when the stream was created: a resize leaves that table unchanged, so every book present then is streamed
+     * exactly once, while books added afterwards may or may not be included.
+     */
+    @Override
+    public Stream<Book> streamBooks() {
+        long[] keys = keyTable(true);
+        return IntStream.range(0, keys.length).mapToLong(slot -> keyAt(keys, slot)).filter(key -> key != EMPTY)
+                .mapToObj(this::getBookByISBN).filter(Objects::nonNull);
+    }
+
+    /**
+     * Streams every user by walking the slots of the user Id table in place, see {@link #streamBooks()}.
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        long[] keys = keyTable(false);
+        return IntStream.range(0, keys.length).mapToLong(slot -> keyAt(keys, slot)).filter(key -> key != EMPTY)
+                .mapToObj(this::getUserById).filter(Objects::nonNull);
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of books.
+     */
+    public int bookCount() {
+        long stamp = lock.readLock();
+        try {
+            return bookCount;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of users.
+     */
+    public int userCount() {
+        long stamp = lock.readLock();
+        try {
+            return userCount;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Records a loan under the write lock.
+    private LoanResult borrow(long ISBN, String userId) {
+        long user = UserId.parse(userId);
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(isbns, ISBN);
+            if (isbns[slot] != ISBN) {
+                return LoanResult.BOOK_NOT_FOUND;
+            }
+            if (user == UserId.INVALID || userIds[slotOf(userIds, user)] != user) {
+                return LoanResult.USER_NOT_REGISTERED;
+            }
+            if (borrowers[slot] != NOT_BORROWED) {
+                return LoanResult.ALREADY_BORROWED;
+            }
+            borrowers[slot] = user;
+            return LoanResult.OK;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Clears a loan under the write lock.
+    private LoanResult giveBack(long ISBN) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(isbns, ISBN);
+            if (isbns[slot] != ISBN) {
+                return LoanResult.BOOK_NOT_FOUND;
+            }
+            if (borrowers[slot] == NOT_BORROWED) {
+                return LoanResult.NOT_BORROWED;
+            }
+            borrowers[slot] = NOT_BORROWED;
+            return LoanResult.OK;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Inserts a book while holding the write lock.
+    private void insertBook(long key, Book book) {
+        if (bookCount + 1 > isbns.length * LOAD_FACTOR) {
+            resizeBooks(grow(isbns.length));
+        }
+        int slot = slotOf(isbns, key);
+        if (isbns[slot] == key) {
+            throw new IllegalArgumentException("Book already exists.");
+        }
+        isbns[slot] = key;
+        titles[slot] = book.getTitle();
+        authors[slot] = book.getAuthor();
+        borrowers[slot] = NOT_BORROWED;
+        bookCount++;
+    }
+
+    // Materializes a book view. May run without a lock, so it reads every array through locals
+    // and tolerates torn reads, which the caller discards by validating its stamp.
+    private Book readBook(long key) {
+        long[] keys = isbns;
+        String[] titleSlots = titles;
+        String[] authorSlots = authors;
+        long[] borrowerSlots = borrowers;
+        if (titleSlots.length != keys.length || authorSlots.length != keys.length
+                || borrowerSlots.length != keys.length) {
+            return null;
+        }
+        int slot = slotOf(keys, key);
+        if (keys[slot] != key) {
+            return null;
+        }
+        Book book = new Book(IsbnCodec.format(key), titleSlots[slot], authorSlots[slot]);
+        if (borrowerSlots[slot] != NOT_BORROWED) {
+            book.borrow();
+        }
+        return book;
+    }
+
+    // Looks a user up. May run without a lock, see readBook.
+    private User readUser(long key) {
+        long[] keys = userIds;
+        User[] values = users;
+        if (values.length != keys.length) {
+            return null;
+        }
+        int slot = slotOf(keys, key);
+        return keys[slot] == key ? values[slot] : null;
+    }
+
+    // Retrieves the current key table of books or users, without copying it.
+    private long[] keyTable(boolean books) {
+        long stamp = lock.readLock();
+        try {
+            return books ? isbns : userIds;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Reads one slot of a key table, which an insert may be writing to.
+    private long keyAt(long[] keys, int slot) {
+        long stamp = lock.tryOptimisticRead();
+        long key = keys[slot];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                key = keys[slot];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return key;
+    }
+
+    // Finds the slot holding the key, or the free slot where it would be inserted.
+    // Terminates because the tables are never full.
+    private static int slotOf(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = (int) KeyHashing.mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resizeBooks(int capacity) {
+        long[] oldIsbns = isbns;
+        String[] oldTitles = titles;
+        String[] oldAuthors = authors;
+        long[] oldBorrowers = borrowers;
+        allocateBooks(capacity);
+        for (int i = 0; i < oldIsbns.length; i++) {
+            if (oldIsbns[i] != EMPTY) {
+                int slot = slotOf(isbns, oldIsbns[i]);
+                isbns[slot] = oldIsbns[i];
+                titles[slot] = oldTitles[i];
+                authors[slot] = oldAuthors[i];
+                borrowers[slot] = oldBorrowers[i];
+            }
+        }
+    }
+
+    private void resizeUsers(int capacity) {
+        long[] oldIds = userIds;
+        User[] oldUsers = users;
+        allocateUsers(capacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = slotOf(userIds, oldIds[i]);
+                userIds[slot] = oldIds[i];
+                users[slot] = oldUsers[i];
+            }
+        }
+    }
+
+    private void allocateBooks(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        titles = new String[capacity];
+        authors = new String[capacity];
+        borrowers = new long[capacity];
+        isbns = keys;
+    }
+
+    private void allocateUsers(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        users = new User[capacity];
+        userIds = keys;
+    }
+
+    // Doubles a table capacity, refusing to grow past the largest power of two an array can hold.
+    private static int grow(int capacity) {
+        if (capacity >= MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Database is full.");
+        }
+        return capacity << 1;
+    }
+
+    // Smallest power of two that holds the given number of entries under the load factor.
+    private static int capacityFor(int entries) {
+        long needed = (long) Math.ceil(Math.max(entries, 1) / (double) LOAD_FACTOR) + 1;
+        if (needed > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("Invalid expected size.");
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    // Packs an ISBN, rejecting invalid ones.
+    private static long isbnKey(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key == IsbnCodec.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+}
@@ -0,0 +1,295 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory, thread-safe implementation of {@link DatabaseService}.
+ * <p>
+ * Books, users and loans are kept in {@link ConcurrentHashMap}s keyed by the packed ISBN and the
+ * numeric user Id, so an ISBN is found whether it is given with or without hyphens.
+ * Reads never lock. Writes lock only the hash bin of the key they change, so writes to different
+ * books or users proceed in parallel.
+ * <p>
+ * Behavior under concurrency:
+ * <ul>
+ *     <li>Of several concurrent {@link #borrowBook(String, String)} calls for the same ISBN exactly one
+ *     records the loan, the others throw {@link BookAlreadyBorrowedException}.</li>
+ *     <li>Of several concurrent {@link #returnBook(String)} calls for the same ISBN exactly one
+ *     clears the loan, the others throw {@link BookNotBorrowedException}.</li>
+ *     <li>A borrow and a return of the same ISBN are applied in a single order that every
+ *     later read observes.</li>
+ * </ul>
+ * The loan table is the record of who holds a book. {@link #tryBorrow(String, String)} and {@link #tryReturn(String)}
+ * also maintain the borrowed flag of the {@link Book} object; borrowBook and returnBook leave it to the caller.
+ */
+public class ConcurrentDatabaseService implements DatabaseService, CatalogScan {
+
+    // Books by packed ISBN.
+    private final ConcurrentHashMap<Long, Book> books;
+
+    // Users by numeric user Id.
+    private final ConcurrentHashMap<Long, User> users;
+
+    // Numeric Id of the borrowing user by packed ISBN, for books currently on loan.
+    private final ConcurrentHashMap<Long, Long> loans;
+
+    /**
+     * Constructs an empty database.
+     */
+    public ConcurrentDatabaseService() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty database sized for the expected number of books.
+     *
+     * @param expectedBooks The number of books the database is expected to hold.
+     */
+    public ConcurrentDatabaseService(int expectedBooks) {
+        this.books = new ConcurrentHashMap<>(expectedBooks);
+        this.users = new ConcurrentHashMap<>();
+        this.loans = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a book to the database.
+     *
+     * @param ISBN The International Standard Book Number identifying the book.
+     * @param book The book to be added.
+     * @throws IllegalArgumentException If the ISBN is invalid or a book with the same ISBN already exists.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        if (books.putIfAbsent(isbnKey(ISBN), book) != null) {
+            throw new IllegalArgumentException("Book already exists.");
+        }
+    }
+
+    /**
+     * Registers a user with the database.
+     *
+     * @param id   The unique identifier for the user.
+     * @param user The user to be registered.
+     * @throws IllegalArgumentException If the Id is invalid or a user with the same Id already exists.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        if (users.putIfAbsent(userKey(id), user) != null) {
+            throw new IllegalArgumentException("User already exists.");
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? null : books.get(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return books.get(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.parse(userId);
+        return key == UserId.INVALID ? null : users.get(key);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return users.get(userId);
+    }
+
+    /**
+     * Records that a book is borrowed by a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @throws BookNotFoundException        If no book has the given ISBN.
+     * @throws UserNotRegisteredException   If no user has the given Id.
+     * @throws BookAlreadyBorrowedException If the book is already on loan.
+     */
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(isbnKey(ISBN), userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        if (!books.containsKey(ISBN)) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        long user = UserId.parse(userId);
+        if (user == UserId.INVALID || !users.containsKey(user)) {
+            throw new UserNotRegisteredException("User not found!");
+        }
+        if (loans.putIfAbsent(ISBN, user) != null) {
+            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+    }
+
+    /**
+     * Records that a borrowed book was returned.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @throws BookNotFoundException    If no book has the given ISBN.
+     * @throws BookNotBorrowedException If the book is not on loan.
+     */
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(isbnKey(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        if (!books.containsKey(ISBN)) {
+            throw new BookNotFoundException("Book not found!");
+        }
+        if (loans.remove(ISBN) == null) {
+            throw new BookNotBorrowedException("Book wasn't borrowed!");
+        }
+    }
+
+    /**
+     * Borrows a book for a user in one atomic step. The loan is recorded and the book marked as borrowed
+     * while holding the lock of the loan's hash bin, so of several concurrent calls for the same ISBN
+     * exactly one succeeds and the book's flag always matches the loan table.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return {@link LoanResult#OK} if the book was borrowed, otherwise the reason it was not.
+     */
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        Book book = key == IsbnCodec.INVALID ? null : books.get(key);
+        if (book == null) {
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        long user = UserId.parse(userId);
+        if (user == UserId.INVALID || !users.containsKey(user)) {
+            return LoanResult.USER_NOT_REGISTERED;
+        }
+        boolean[] borrowed = new boolean[1];
+        try {
+            loans.compute(key, (ignored, holder) -> {
+                if (holder != null) {
+                    return holder;
+                }
+                book.borrow();
+                borrowed[0] = true;
+                return user;
+            });
+        } catch (IllegalStateException e) {
+            // The book was marked as borrowed without going through the loan table.
+            return LoanResult.ALREADY_BORROWED;
+        }
+        return borrowed[0] ? LoanResult.OK : LoanResult.ALREADY_BORROWED;
+    }
+
+    /**
+     * Returns a book in one atomic step. The loan is cleared and the book marked as not borrowed
+     * while holding the lock of the loan's hash bin, so of several concurrent calls for the same ISBN
+     * exactly one succeeds.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return {@link LoanResult#OK} if the book was returned, otherwise the reason it was not.
+     */
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        Book book = key == IsbnCodec.INVALID ? null : books.get(key);
+        if (book == null) {
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        boolean[] returned = new boolean[1];
+        loans.computeIfPresent(key, (ignored, holder) -> {
+            if (book.isBorrowed()) {
+                book.returnBook();
+            }
+            returned[0] = true;
+            return null;
+        });
+        return returned[0] ? LoanResult.OK : LoanResult.NOT_BORROWED;
+    }
+
+    /**
+     * Streams every book straight from the hash table, without copying it.
+     * The stream is weakly consistent: it never fails on concurrent changes, and splits by hash bin
+     * for parallel processing.
+     */
+    @Override
+    public Stream<Book> streamBooks() {
+        return books.values().stream();
+    }
+
+    /**
+     * Streams every user straight from the hash table, see {@link #streamBooks()}.
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        return users.values().stream();
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of books.
+     */
+    public int bookCount() {
+        return books.size();
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of users.
+     */
+    public int userCount() {
+        return users.size();
+    }
+
+    /**
+     * Retrieves the number of books currently on loan.
+     *
+     * @return The number of loans.
+     */
+    public int loanCount() {
+        return loans.size();
+    }
+
+    // Packs an ISBN, rejecting invalid ones.
+    private static long isbnKey(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key == IsbnCodec.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    // Parses a user Id, rejecting invalid ones.
+    private static long userKey(String userId) {
+        long key = UserId.parse(userId);
+        if (key == UserId.INVALID) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return key;
+    }
+}
@@ -1,10 +1,18 @@
 package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
 import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Provides an interface for services responsible for managing the database of books and users.
+ * Lookups beyond a single key are optional capabilities, see {@link CatalogIndex} and {@link CatalogScan}.
  */
 public interface DatabaseService {
 
@@ -32,6 +40,18 @@ public interface DatabaseService {
      */
     Book getBookByISBN(String ISBN);
 
+    /**
+     * Fetches a book from the database using its packed ISBN.
+     * By default this looks the book up under the 13 digit form of the ISBN, which allocates that string on every
+     * call; backends keyed by the packed ISBN should override it.
+     *
+     * @param ISBN The ISBN packed by {@link IsbnCodec#pack(CharSequence)}.
+     * @return The book with the given ISBN or null if the book does not exist in the database.
+     */
+    default Book getBookByISBN(long ISBN) {
+        return getBookByISBN(IsbnCodec.format(ISBN));
+    }
+
     /**
      * Fetches a user from the database using their ID.
      *
@@ -40,6 +60,36 @@ public interface DatabaseService {
      */
     User getUserById(String userId);
 
+    /**
+     * Fetches a user from the database using their numeric ID.
+     * By default this looks the user up under the 12-digit form of the ID, which allocates that string on every
+     * call; backends keyed by the numeric ID should override it.
+     *
+     * @param userId The user ID parsed by {@link UserId#parse(CharSequence)}.
+     * @return The user with the given ID or null if the user is not registered in the database.
+     */
+    default User getUserById(long userId) {
+        return getUserById(UserId.format(userId));
+    }
+
+    /**
+     * Fetches a book and a user from the database together, as needed to lend the book to the user.
+     * By default this looks the book up, and then the user only if the book exists and a user Id is given,
+     * by numeric ID when the user Id is well-formed; backends that can should answer both in a single round-trip.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The unique identifier for the user, or null to fetch only the book.
+     * @return The book and the user found. The user is null if the book does not exist.
+     */
+    default BookContext loadContext(String ISBN, String userId) {
+        Book book = getBookByISBN(ISBN);
+        if (book == null || userId == null) {
+            return new BookContext(book, null);
+        }
+        long key = UserId.parse(userId);
+        return new BookContext(book, key == UserId.INVALID ? getUserById(userId) : getUserById(key));
+    }
+
     /**
      * Borrows a book identified by its ISBN for a user identified by their userId.
      * This method should appropriately mark the book as borrowed and associate it with the user.
@@ -49,6 +99,17 @@ public interface DatabaseService {
      */
     void borrowBook(String ISBN, String userId);
 
+    /**
+     * Borrows a book identified by its packed ISBN for a user identified by their userId.
+     * By default this borrows the book under the 13 digit form of the ISBN, allocating that string on every call.
+     *
+     * @param ISBN   The ISBN packed by {@link IsbnCodec#pack(CharSequence)}.
+     * @param userId The unique identifier for the user borrowing the book.
+     */
+    default void borrowBook(long ISBN, String userId) {
+        borrowBook(IsbnCodec.format(ISBN), userId);
+    }
+
     /**
      * Marks a book identified by its ISBN as returned in the database.
      * This should update the book's status to not being borrowed.
@@ -56,4 +117,148 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Marks a book identified by its packed ISBN as returned in the database.
+     * By default this returns the book under the 13 digit form of the ISBN, allocating that string on every call.
+     *
+     * @param ISBN The ISBN packed by {@link IsbnCodec#pack(CharSequence)}.
+     */
+    default void returnBook(long ISBN) {
+        returnBook(IsbnCodec.format(ISBN));
+    }
+
+    /**
+     * Borrows a book for a user if the book exists, the user is registered and the book is not on loan,
+     * marking the book as borrowed and recording the loan.
+     * By default the book object itself decides between concurrent calls, and the loan is recorded separately;
+     * backends that can should check and borrow in a single atomic operation.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return {@link LoanResult#OK} if the book was borrowed, otherwise the reason it was not.
+     */
+    default LoanResult tryBorrow(String ISBN, String userId) {
+        BookContext context = loadContext(ISBN, userId);
+        Book book = context.getBook();
+        if (book == null) {
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        if (context.getUser() == null) {
+            return LoanResult.USER_NOT_REGISTERED;
+        }
+        if (book.isBorrowed()) {
+            return LoanResult.ALREADY_BORROWED;
+        }
+        try {
+            book.borrow();
+        } catch (IllegalStateException e) {
+            // Another call borrowed the book since the check.
+            return LoanResult.ALREADY_BORROWED;
+        }
+        borrowBook(ISBN, userId);
+        return LoanResult.OK;
+    }
+
+    /**
+     * Returns a book if it exists and is on loan, marking the book as not borrowed and clearing the loan.
+     * By default the book object itself decides between concurrent calls, and the loan is cleared separately;
+     * backends that can should check and return in a single atomic operation.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return {@link LoanResult#OK} if the book was returned, otherwise the reason it was not.
+     */
+    default LoanResult tryReturn(String ISBN) {
+        Book book = getBookByISBN(ISBN);
+        if (book == null) {
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        if (!book.isBorrowed()) {
+            return LoanResult.NOT_BORROWED;
+        }
+        try {
+            book.returnBook();
+        } catch (IllegalStateException e) {
+            // Another call returned the book since the check.
+            return LoanResult.NOT_BORROWED;
+        }
+        returnBook(ISBN);
+        return LoanResult.OK;
+    }
+
+    /**
+     * Fetches several books from the database in one call.
+     * By default this looks the books up one by one; backends that can should answer in a single round-trip.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The books found, keyed by the ISBN they were requested with. Missing books have no entry.
+     */
+    default Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> books = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = getBookByISBN(ISBN);
+            if (book != null) {
+                books.put(ISBN, book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Adds several books to the database in one call.
+     * By default this adds the books one by one; backends that can should write them in a single round-trip.
+     * A book that cannot be added does not prevent the others from being added.
+     *
+     * @param books The books to be added, keyed by their ISBN.
+     * @return The books that could not be added, keyed by ISBN, mapped to the exception that rejected them.
+     */
+    default Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            try {
+                addBook(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                failures.put(entry.getKey(), e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Fetches several users from the database in one call.
+     * By default this looks the users up one by one; backends that can should answer in a single round-trip.
+     *
+     * @param userIds The unique identifiers of the users.
+     * @return The users found, keyed by their ID. Unregistered users have no entry.
+     */
+    default Map<String, User> getUsersById(Collection<String> userIds) {
+        Map<String, User> users = new HashMap<>();
+        for (String userId : userIds) {
+            User user = getUserById(userId);
+            if (user != null) {
+                users.put(userId, user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Registers several users with the database in one call.
+     * By default this registers the users one by one; backends that can should write them in a single round-trip.
+     * A user that cannot be registered does not prevent the others from being registered.
+     *
+     * @param users The users to be registered, keyed by their ID.
+     * @return The users that could not be registered, keyed by ID, mapped to the exception that rejected them.
+     */
+    default Map<String, RuntimeException> registerUsers(Map<String, User> users) {
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            try {
+                registerUser(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                failures.put(entry.getKey(), e);
+            }
+        }
+        return failures;
+    }
 }
@@ -0,0 +1,26 @@
+package ac.il.bgu.qa.services;
+
+/**
+ * Controls when a change recorded in a write-ahead log is forced to the disk,
+ * trading the latency of a change against the changes that may be lost in a crash.
+ */
+public enum DurabilityMode {
+
+    /**
+     * Every change forces the log on its own before it returns.
+     * Nothing acknowledged is lost, at the cost of one disk flush per change.
+     */
+    SYNC,
+
+    /**
+     * A change waits until the log is forced past it, but concurrent changes share one flush.
+     * Nothing acknowledged is lost, and the flush cost is spread over every waiting writer.
+     */
+    GROUP,
+
+    /**
+     * A change returns as soon as it is written to the operating system, and the log is forced
+     * in the background. Changes acknowledged shortly before a crash may be lost.
+     */
+    ASYNC
+}
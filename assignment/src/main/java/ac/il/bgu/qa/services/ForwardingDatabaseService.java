@@ -0,0 +1,125 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link DatabaseService} that forwards every call to another database service.
+ * Decorators extend it and override only the operations they change.
+ * The optional {@link CatalogIndex} and {@link CatalogScan} capabilities of the delegate are not forwarded;
+ * {@link #getDelegate()} exposes the delegate to look them up.
+ */
+public abstract class ForwardingDatabaseService implements DatabaseService {
+
+    // The database service calls are forwarded to.
+    protected final DatabaseService delegate;
+
+    /**
+     * Constructs a forwarding database service.
+     *
+     * @param delegate The database service calls are forwarded to.
+     */
+    protected ForwardingDatabaseService(DatabaseService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Retrieves the database service calls are forwarded to.
+     *
+     * @return The delegate.
+     */
+    public DatabaseService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public BookContext loadContext(String ISBN, String userId) {
+        return delegate.loadContext(ISBN, userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        delegate.returnBook(ISBN);
+    }
+
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        return delegate.tryBorrow(ISBN, userId);
+    }
+
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        return delegate.tryReturn(ISBN);
+    }
+
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        return delegate.getBooksByISBN(ISBNs);
+    }
+
+    @Override
+    public Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        return delegate.addBooks(books);
+    }
+
+    @Override
+    public Map<String, User> getUsersById(Collection<String> userIds) {
+        return delegate.getUsersById(userIds);
+    }
+
+    @Override
+    public Map<String, RuntimeException> registerUsers(Map<String, User> users) {
+        return delegate.registerUsers(users);
+    }
+}
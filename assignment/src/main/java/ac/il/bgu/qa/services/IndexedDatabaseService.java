@@ -0,0 +1,392 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.StripedLock;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+import ac.il.bgu.qa.index.CompressedBitmap;
+import ac.il.bgu.qa.index.IsbnRangeIndex;
+import ac.il.bgu.qa.index.LoanIndex;
+import ac.il.bgu.qa.index.Names;
+import ac.il.bgu.qa.index.SecondaryIndex;
+import ac.il.bgu.qa.index.SlotTable;
+import ac.il.bgu.qa.index.TextIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link DatabaseService} decorator that keeps in-memory indexes over the catalog of another database
+ * service, answering the lookups the underlying database cannot answer without a full scan.
+ * <p>
+ * The indexes are kept up to date by the changes made through this decorator. A book added to the
+ * underlying database directly is not indexed; books already present when the decorator is created
+ * are indexed from the books passed to the constructor. Loans are only known from the moment the
+ * decorator is created.
+ * <p>
+ * A change to a book and the matching index update are made under the lock of the book's ISBN, so
+ * concurrent borrows and returns of one book leave the indexes agreeing with the underlying database.
+ * <p>
+ * Indexes:
+ * <ul>
+ *     <li>Author and title, normalized by {@link Names}, answering {@link #getBooksByAuthor(String)}
+ *     and {@link #getBooksByTitle(String)}.</li>
+ *     <li>Full text over titles and authors, with partial word matches, answering
+ *     {@link #searchBooks(String, int)}, see {@link TextIndex}.</li>
+ *     <li>Loans, by user and by book, answering {@link #getBooksBorrowedBy(String)} and
+ *     {@link #getBorrower(String)}, see {@link LoanIndex}.</li>
+ *     <li>ISBNs in order, answering {@link #getBooksByISBNPrefix(String)},
+ *     {@link #getBooksByISBNRange(String, String)} and {@link #streamBooks()}, see {@link IsbnRangeIndex}.</li>
+ *     <li>Availability, one bit per book in a {@link CompressedBitmap}, answering {@link #countAvailableBooks()}
+ *     without touching the books themselves.</li>
+ *     <li>The books of each author as a {@link CompressedBitmap} of the same slots, intersected with the
+ *     availability bitmap to answer {@link #getAvailableBooksByAuthor(String)}.</li>
+ * </ul>
+ */
+public class IndexedDatabaseService extends ForwardingDatabaseService implements CatalogIndex, CatalogScan {
+
+    private final SecondaryIndex authors = new SecondaryIndex(Names::normalizeAuthor);
+    private final SecondaryIndex titles = new SecondaryIndex(Names::normalizeTitle);
+    private final TextIndex text = new TextIndex();
+    private final LoanIndex loans = new LoanIndex();
+    private final IsbnRangeIndex isbns = new IsbnRangeIndex();
+
+    // Slots of the books, the slots of the books not on loan, and the slots of the books of each
+    // normalized author, the bitmaps guarded by the availability lock.
+    private final SlotTable slots = new SlotTable();
+    private final CompressedBitmap available = new CompressedBitmap();
+    private final Map<String, CompressedBitmap> authorSlots = new HashMap<>();
+    private final ReadWriteLock availabilityLock = new ReentrantReadWriteLock();
+
+    // Serializes each change to a book with the index update that follows it.
+    private final StripedLock locks = new StripedLock(64);
+
+    /**
+     * Constructs the indexes in front of an empty database.
+     *
+     * @param delegate The database service to index.
+     */
+    public IndexedDatabaseService(DatabaseService delegate) {
+        this(delegate, Collections.<Book>emptyList());
+    }
+
+    /**
+     * Constructs the indexes in front of a database that already holds books.
+     *
+     * @param delegate      The database service to index.
+     * @param existingBooks Every book already in the database.
+     */
+    public IndexedDatabaseService(DatabaseService delegate, Iterable<Book> existingBooks) {
+        super(delegate);
+        for (Book book : existingBooks) {
+            index(book.getISBN(), book);
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        Lock lock = locks.lock(IsbnCodec.pack(ISBN));
+        try {
+            delegate.addBook(ISBN, book);
+            index(ISBN, book);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        List<Long> keys = new ArrayList<>(books.size());
+        for (String ISBN : books.keySet()) {
+            keys.add(IsbnCodec.pack(ISBN));
+        }
+        List<Lock> held = locks.lockAll(keys);
+        try {
+            Map<String, RuntimeException> failures = delegate.addBooks(books);
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                if (!failures.containsKey(entry.getKey())) {
+                    index(entry.getKey(), entry.getValue());
+                }
+            }
+            return failures;
+        } finally {
+            for (Lock lock : held) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        Lock lock = locks.lock(key);
+        try {
+            delegate.borrowBook(ISBN, userId);
+            lent(key, userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        Lock lock = locks.lock(ISBN);
+        try {
+            delegate.borrowBook(ISBN, userId);
+            lent(ISBN, userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        Lock lock = locks.lock(key);
+        try {
+            LoanResult result = delegate.tryBorrow(ISBN, userId);
+            if (result == LoanResult.OK) {
+                lent(key, userId);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        Lock lock = locks.lock(key);
+        try {
+            delegate.returnBook(ISBN);
+            returned(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        Lock lock = locks.lock(ISBN);
+        try {
+            delegate.returnBook(ISBN);
+            returned(ISBN);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        Lock lock = locks.lock(key);
+        try {
+            LoanResult result = delegate.tryReturn(ISBN);
+            if (result == LoanResult.OK) {
+                returned(key);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Book> getBooksByAuthor(String author) {
+        return resolve(authors.find(author));
+    }
+
+    @Override
+    public List<Book> getBooksByTitle(String title) {
+        return resolve(titles.find(title));
+    }
+
+    @Override
+    public List<Book> searchBooks(String query, int limit) {
+        return resolve(text.search(query, limit));
+    }
+
+    @Override
+    public Stream<Book> getBooksByISBNPrefix(String prefix) {
+        return stream(isbns.prefix(prefix));
+    }
+
+    @Override
+    public Stream<Book> getBooksByISBNRange(String fromISBN, String toISBN) {
+        long from = IsbnCodec.pack(fromISBN);
+        long to = IsbnCodec.pack(toISBN);
+        if (from == IsbnCodec.INVALID || to == IsbnCodec.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return stream(isbns.range(from, to + 1));
+    }
+
+    /**
+     * Streams every indexed book in ascending order of ISBN, whatever order the underlying database keeps.
+     */
+    @Override
+    public Stream<Book> streamBooks() {
+        return stream(isbns.range(0, Long.MAX_VALUE));
+    }
+
+    /**
+     * Streams every user of the underlying database.
+     *
+     * @throws UnsupportedOperationException If the underlying database cannot scan its users.
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        CatalogScan scan = CatalogScan.find(delegate);
+        if (scan == null) {
+            throw new UnsupportedOperationException("Listing users is not supported.");
+        }
+        return scan.streamUsers();
+    }
+
+    @Override
+    public int countAvailableBooks() {
+        availabilityLock.readLock().lock();
+        try {
+            return available.cardinality();
+        } finally {
+            availabilityLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fetches every available book by an author, intersecting the author's books with the availability bitmap.
+     */
+    @Override
+    public List<Book> getAvailableBooksByAuthor(String author) {
+        String term = Names.normalizeAuthor(author);
+        if (term == null) {
+            return new ArrayList<>();
+        }
+        int[] matching;
+        availabilityLock.readLock().lock();
+        try {
+            CompressedBitmap byAuthor = authorSlots.get(term);
+            matching = byAuthor == null ? new int[0] : byAuthor.and(available).toArray();
+        } finally {
+            availabilityLock.readLock().unlock();
+        }
+        long[] keys = new long[matching.length];
+        for (int i = 0; i < matching.length; i++) {
+            keys[i] = slots.keyOf(matching[i]);
+        }
+        Arrays.sort(keys);
+        return resolve(keys);
+    }
+
+    @Override
+    public List<Book> getBooksBorrowedBy(String userId) {
+        long user = UserId.parse(userId);
+        return user == UserId.INVALID ? new ArrayList<Book>() : resolve(loans.loansOf(user));
+    }
+
+    @Override
+    public User getBorrower(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        long user = key == IsbnCodec.INVALID ? LoanIndex.NOT_BORROWED : loans.borrowerOf(key);
+        return user == LoanIndex.NOT_BORROWED ? null : delegate.getUserById(user);
+    }
+
+    /**
+     * Counts the books currently on loan to a user, without fetching them.
+     *
+     * @param userId The unique identifier for the user.
+     * @return The number of books on loan to the user.
+     */
+    public int getLoanCount(String userId) {
+        long user = UserId.parse(userId);
+        return user == UserId.INVALID ? 0 : loans.loanCount(user);
+    }
+
+    // Records a loan the underlying database accepted, under the lock of the book.
+    private void lent(long ISBN, String userId) {
+        long user = UserId.parse(userId);
+        if (ISBN != IsbnCodec.INVALID && user != UserId.INVALID) {
+            loans.borrow(ISBN, user);
+            setAvailable(ISBN, false);
+        }
+    }
+
+    // Records a return the underlying database accepted, under the lock of the book.
+    private void returned(long ISBN) {
+        loans.giveBack(ISBN);
+        setAvailable(ISBN, true);
+    }
+
+    private void setAvailable(long ISBN, boolean isAvailable) {
+        int slot = slots.slotOf(ISBN);
+        if (slot == SlotTable.NO_SLOT) {
+            return;
+        }
+        availabilityLock.writeLock().lock();
+        try {
+            if (isAvailable) {
+                available.add(slot);
+            } else {
+                available.remove(slot);
+            }
+        } finally {
+            availabilityLock.writeLock().unlock();
+        }
+    }
+
+    // Adds a book stored in the underlying database to every index.
+    private void index(String ISBN, Book book) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key == IsbnCodec.INVALID || book == null) {
+            return;
+        }
+        authors.add(book.getAuthor(), key);
+        titles.add(book.getTitle(), key);
+        text.add(key, book.getTitle(), book.getAuthor());
+        isbns.add(key);
+        int slot = slots.assign(key);
+        String author = Names.normalizeAuthor(book.getAuthor());
+        availabilityLock.writeLock().lock();
+        try {
+            if (author != null) {
+                authorSlots.computeIfAbsent(author, ignored -> new CompressedBitmap()).add(slot);
+            }
+            if (book.isBorrowed()) {
+                available.remove(slot);
+            } else {
+                available.add(slot);
+            }
+        } finally {
+            availabilityLock.writeLock().unlock();
+        }
+    }
+
+    // Fetches the books of the given keys lazily, skipping any that disappeared.
+    private Stream<Book> stream(LongStream keys) {
+        return keys.mapToObj(delegate::getBookByISBN).filter(Objects::nonNull);
+    }
+
+    // Fetches the books of the given keys from the underlying database, skipping any that disappeared.
+    private List<Book> resolve(long[] keys) {
+        List<Book> books = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            Book book = delegate.getBookByISBN(key);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+}
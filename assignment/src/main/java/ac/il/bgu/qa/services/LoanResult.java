@@ -0,0 +1,32 @@
+package ac.il.bgu.qa.services;
+
+/**
+ * The outcome of {@link DatabaseService#tryBorrow(String, String)} and {@link DatabaseService#tryReturn(String)}.
+ */
+public enum LoanResult {
+
+    /**
+     * The book was borrowed or returned.
+     */
+    OK,
+
+    /**
+     * No book has the given ISBN.
+     */
+    BOOK_NOT_FOUND,
+
+    /**
+     * No user has the given Id. The book was not borrowed.
+     */
+    USER_NOT_REGISTERED,
+
+    /**
+     * The book is already on loan. It was not borrowed again.
+     */
+    ALREADY_BORROWED,
+
+    /**
+     * The book is not on loan. Nothing was returned.
+     */
+    NOT_BORROWED
+}
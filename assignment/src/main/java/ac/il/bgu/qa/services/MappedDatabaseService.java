@@ -0,0 +1,626 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.KeyHashing;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * An implementation of {@link DatabaseService} that keeps books and users off the Java heap,
+ * in fixed-layout records inside memory-mapped files.
+ * <p>
+ * Each file is an open-addressing hash table laid out directly on disk, keyed by the packed ISBN
+ * or the numeric user Id, so reopening an existing database only reads a small header and maps
+ * the file. Records are paged in by the operating system as they are touched, and loans are
+ * updated in place. Changes reach the disk when the operating system writes the pages back,
+ * or when {@link #force()} or {@link #close()} is called.
+ * <p>
+ * Book records keep the ISBN, title, author and borrower, user records keep the Id and name.
+ * A {@link User} also needs a {@link NotificationService}, which cannot be stored in a file, so
+ * the database is given a function that supplies the service for a user Id when the user is read.
+ * <p>
+ * The capacity of each table is fixed when the files are created. Titles are limited to
+ * {@value #TITLE_BYTES} bytes, authors to {@value #AUTHOR_BYTES} bytes and user names to
+ * {@value #NAME_BYTES} bytes of UTF-8.
+ */
+public class MappedDatabaseService implements DatabaseService, CatalogScan, Closeable {
+
+    /**
+     * Largest number of UTF-8 bytes kept for a title.
+     */
+    public static final int TITLE_BYTES = 254;
+
+    /**
+     * Largest number of UTF-8 bytes kept for an author.
+     */
+    public static final int AUTHOR_BYTES = 110;
+
+    /**
+     * Largest number of UTF-8 bytes kept for a user name.
+     */
+    public static final int NAME_BYTES = 150;
+
+    // File header: magic, version, record size, capacity and number of records in use.
+    private static final int MAGIC = 0x4C494252;
+    // Version 2 places keys by the full 64-bit KeyHashing.mix.
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+
+    // Book record layout. Keys and borrowers are stored plus one so that a zero-filled
+    // record, as found in a freshly created file, is an empty slot.
+    private static final int BOOK_RECORD = 384;
+    private static final int BOOK_KEY = 0;
+    private static final int BOOK_BORROWER = 8;
+    private static final int BOOK_TITLE = 16;
+    private static final int BOOK_AUTHOR = BOOK_TITLE + 2 + TITLE_BYTES;
+
+    // User record layout.
+    private static final int USER_RECORD = 160;
+    private static final int USER_KEY = 0;
+    private static final int USER_NAME = 8;
+
+    // Tables stop accepting records once they are this full.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // Records per mapped segment; each segment stays well below the 2GB limit of a single mapping.
+    private static final int SEGMENT_RECORDS = 1 << 20;
+
+    private final Table books;
+    private final Table users;
+
+    // Supplies the notification service of a user read back from the file.
+    private final Function<String, NotificationService> notificationServices;
+
+    // Serializes writers; readers share the lock.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the database stored in the given directory, creating it when it does not exist yet.
+     * When the files already exist their stored capacities are used and the given ones are ignored.
+     *
+     * @param directory            The directory holding the database files.
+     * @param bookCapacity         The number of books a new database can hold.
+     * @param userCapacity         The number of users a new database can hold.
+     * @param notificationServices Supplies the notification service of a user, given the user Id.
+     * @throws UncheckedIOException If the files cannot be created, opened or mapped.
+     */
+    public MappedDatabaseService(Path directory, int bookCapacity, int userCapacity,
+                                 Function<String, NotificationService> notificationServices) {
+        if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        this.notificationServices = notificationServices;
+        try {
+            Files.createDirectories(directory);
+            this.books = new Table(directory.resolve("books.db"), BOOK_RECORD, bookCapacity);
+            try {
+                this.users = new Table(directory.resolve("users.db"), USER_RECORD, userCapacity);
+            } catch (IOException | RuntimeException e) {
+                books.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a book to the database. Only the ISBN, title and author of the book are kept.
+     *
+     * @param ISBN The International Standard Book Number identifying the book.
+     * @param book The book to be added.
+     * @throws IllegalArgumentException If the ISBN, title or author cannot be stored,
+     *                                  or a book with the same ISBN already exists.
+     * @throws IllegalStateException    If the database is full.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        long key = isbnKey(ISBN);
+        byte[] title = encode(book.getTitle(), TITLE_BYTES, "Invalid title.");
+        byte[] author = encode(book.getAuthor(), AUTHOR_BYTES, "Invalid author.");
+        lock.writeLock().lock();
+        try {
+            long slot = books.reserve(key, "Book already exists.");
+            books.putLong(slot, BOOK_BORROWER, 0);
+            books.putString(slot, BOOK_TITLE, title);
+            books.putString(slot, BOOK_AUTHOR, author);
+            books.publish(slot, key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a user with the database. Only the Id and name of the user are kept.
+     *
+     * @param id   The unique identifier for the user.
+     * @param user The user to be registered.
+     * @throws IllegalArgumentException If the Id or name cannot be stored, or a user with the same Id already exists.
+     * @throws IllegalStateException    If the database is full.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        long key = UserId.parse(id);
+        if (key == UserId.INVALID) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        byte[] name = encode(user.getName(), NAME_BYTES, "Invalid user name.");
+        lock.writeLock().lock();
+        try {
+            long slot = users.reserve(key, "User already exists.");
+            users.putString(slot, USER_NAME, name);
+            users.publish(slot, key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? null : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        lock.readLock().lock();
+        try {
+            long slot = books.find(ISBN);
+            return slot < 0 ? null : readBook(slot, ISBN);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.parse(userId);
+        return key == UserId.INVALID ? null : getUserById(key);
+    }
+
+    @Override
+    public User getUserById(long userId) {
+        String name;
+        lock.readLock().lock();
+        try {
+            long slot = users.find(userId);
+            if (slot < 0) {
+                return null;
+            }
+            name = users.getString(slot, USER_NAME);
+        } finally {
+            lock.readLock().unlock();
+        }
+        String id = UserId.format(userId);
+        return new User(name, id, notificationServices.apply(id));
+    }
+
+    /**
+     * Records that a book is borrowed by a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @throws BookNotFoundException        If no book has the given ISBN.
+     * @throws UserNotRegisteredException   If no user has the given Id.
+     * @throws BookAlreadyBorrowedException If the book is already on loan.
+     */
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(isbnKey(ISBN), userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        switch (borrow(ISBN, userId)) {
+            case BOOK_NOT_FOUND:
+                throw new BookNotFoundException("Book not found!");
+            case USER_NOT_REGISTERED:
+                throw new UserNotRegisteredException("User not found!");
+            case ALREADY_BORROWED:
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            default:
+        }
+    }
+
+    /**
+     * Borrows a book for a user, checking and recording the loan under a single acquisition of the write lock.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return {@link LoanResult#OK} if the book was borrowed, otherwise the reason it was not.
+     */
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? LoanResult.BOOK_NOT_FOUND : borrow(key, userId);
+    }
+
+    /**
+     * Records that a borrowed book was returned.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @throws BookNotFoundException    If no book has the given ISBN.
+     * @throws BookNotBorrowedException If the book is not on loan.
+     */
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(isbnKey(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        switch (giveBack(ISBN)) {
+            case BOOK_NOT_FOUND:
+                throw new BookNotFoundException("Book not found!");
+            case NOT_BORROWED:
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            default:
+        }
+    }
+
+    /**
+     * Returns a book, checking and clearing the loan under a single acquisition of the write lock.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return {@link LoanResult#OK} if the book was returned, otherwise the reason it was not.
+     */
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        return key == IsbnCodec.INVALID ? LoanResult.BOOK_NOT_FOUND : giveBack(key);
+    }
+
+    // Records a loan under the write lock.
+    private LoanResult borrow(long ISBN, String userId) {
+        long user = UserId.parse(userId);
+        lock.writeLock().lock();
+        try {
+            long slot = books.find(ISBN);
+            if (slot < 0) {
+                return LoanResult.BOOK_NOT_FOUND;
+            }
+            if (user == UserId.INVALID || users.find(user) < 0) {
+                return LoanResult.USER_NOT_REGISTERED;
+            }
+            if (books.getLong(slot, BOOK_BORROWER) != 0) {
+                return LoanResult.ALREADY_BORROWED;
+            }
+            books.putLong(slot, BOOK_BORROWER, user + 1);
+            return LoanResult.OK;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Clears a loan under the write lock.
+    private LoanResult giveBack(long ISBN) {
+        lock.writeLock().lock();
+        try {
+            long slot = books.find(ISBN);
+            if (slot < 0) {
+                return LoanResult.BOOK_NOT_FOUND;
+            }
+            if (books.getLong(slot, BOOK_BORROWER) == 0) {
+                return LoanResult.NOT_BORROWED;
+            }
+            books.putLong(slot, BOOK_BORROWER, 0);
+            return LoanResult.OK;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Streams every book by walking the slots of the file in order, without loading the table.
+     * Each book is read under the read lock on its own, so a long export never holds writers off, and
+     * the stream splits by slot range for parallel processing.
+     */
+    @Override
+    public Stream<Book> streamBooks() {
+        return LongStream.range(0, books.capacity()).mapToObj(slot -> {
+            lock.readLock().lock();
+            try {
+                long stored = books.getLong(slot, BOOK_KEY);
+                return stored == 0 ? null : readBook(slot, stored - 1);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }).filter(Objects::nonNull);
+    }
+
+    /**
+     * Streams every user by walking the slots of the file in order, see {@link #streamBooks()}.
+     */
+    @Override
+    public Stream<User> streamUsers() {
+        return LongStream.range(0, users.capacity()).mapToObj(slot -> {
+            long key;
+            String name;
+            lock.readLock().lock();
+            try {
+                long stored = users.getLong(slot, USER_KEY);
+                if (stored == 0) {
+                    return null;
+                }
+                key = stored - 1;
+                name = users.getString(slot, USER_NAME);
+            } finally {
+                lock.readLock().unlock();
+            }
+            String id = UserId.format(key);
+            return new User(name, id, notificationServices.apply(id));
+        }).filter(Objects::nonNull);
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of books.
+     */
+    public int bookCount() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of users.
+     */
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return users.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all changes made so far to the disk.
+     */
+    public void force() {
+        lock.writeLock().lock();
+        try {
+            books.force();
+            users.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all changes to the disk and closes the files.
+     * The mappings themselves are released by the garbage collector.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            books.force();
+            users.force();
+            books.close();
+            users.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Encodes a string for a fixed-size field, rejecting null and oversized values.
+    private static byte[] encode(String value, int maxBytes, String message) {
+        if (value == null) {
+            throw new IllegalArgumentException(message);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException(message);
+        }
+        return bytes;
+    }
+
+    // Packs an ISBN, rejecting invalid ones.
+    private static long isbnKey(String ISBN) {
+        long key = IsbnCodec.pack(ISBN);
+        if (key == IsbnCodec.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    // Materializes the book in a slot. Runs under the read lock.
+    private Book readBook(long slot, long ISBN) {
+        Book book = new Book(IsbnCodec.format(ISBN),
+                books.getString(slot, BOOK_TITLE), books.getString(slot, BOOK_AUTHOR));
+        if (books.getLong(slot, BOOK_BORROWER) != 0) {
+            book.borrow();
+        }
+        return book;
+    }
+
+    /**
+     * A hash table of fixed-size records laid out in a memory-mapped file.
+     * The first eight bytes of every record hold its key plus one, zero marks a free slot.
+     */
+    private static final class Table {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer[] segments;
+        private final int recordSize;
+        private final int capacity;
+        private final int segmentRecords;
+
+        Table(Path file, int recordSize, int requestedCapacity) throws IOException {
+            boolean exists = Files.exists(file) && Files.size(file) >= HEADER_BYTES;
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                if (exists) {
+                    if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION
+                            || header.getInt(RECORD_SIZE_OFFSET) != recordSize) {
+                        throw new IllegalStateException("Unrecognized database file " + file + ".");
+                    }
+                    this.capacity = header.getInt(CAPACITY_OFFSET);
+                } else {
+                    this.capacity = capacityFor(requestedCapacity);
+                    header.putInt(MAGIC_OFFSET, MAGIC);
+                    header.putInt(VERSION_OFFSET, VERSION);
+                    header.putInt(RECORD_SIZE_OFFSET, recordSize);
+                    header.putInt(CAPACITY_OFFSET, capacity);
+                    header.putInt(SIZE_OFFSET, 0);
+                }
+                this.recordSize = recordSize;
+                this.segmentRecords = Math.min(capacity, SEGMENT_RECORDS);
+                this.segments = new MappedByteBuffer[capacity / segmentRecords];
+                long segmentBytes = (long) segmentRecords * recordSize;
+                for (int i = 0; i < segments.length; i++) {
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            HEADER_BYTES + i * segmentBytes, segmentBytes);
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int size() {
+            return header.getInt(SIZE_OFFSET);
+        }
+
+        int capacity() {
+            return capacity;
+        }
+
+        // Returns the slot holding the key, or -1 if the key is absent.
+        long find(long key) {
+            long slot = probe(key);
+            return getLong(slot, 0) == key + 1 ? slot : -1;
+        }
+
+        // Returns the free slot for a new key; the caller fills the record and then publishes it.
+        long reserve(long key, String duplicateMessage) {
+            long slot = probe(key);
+            if (getLong(slot, 0) == key + 1) {
+                throw new IllegalArgumentException(duplicateMessage);
+            }
+            if (size() + 1 > capacity * LOAD_FACTOR) {
+                throw new IllegalStateException("Database is full.");
+            }
+            return slot;
+        }
+
+        // Writes the key of a filled record, making it visible to lookups.
+        void publish(long slot, long key) {
+            putLong(slot, 0, key + 1);
+            header.putInt(SIZE_OFFSET, size() + 1);
+        }
+
+        long getLong(long slot, int offset) {
+            return segment(slot).getLong(position(slot, offset));
+        }
+
+        void putLong(long slot, int offset, long value) {
+            segment(slot).putLong(position(slot, offset), value);
+        }
+
+        String getString(long slot, int offset) {
+            MappedByteBuffer segment = segment(slot);
+            int position = position(slot, offset);
+            byte[] bytes = new byte[segment.getShort(position)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = segment.get(position + 2 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void putString(long slot, int offset, byte[] bytes) {
+            MappedByteBuffer segment = segment(slot);
+            int position = position(slot, offset);
+            segment.putShort(position, (short) bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                segment.put(position + 2 + i, bytes[i]);
+            }
+        }
+
+        void force() {
+            header.force();
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Linear probing from the home slot of the key; terminates because the table is never full.
+        private long probe(long key) {
+            long mask = capacity - 1;
+            long slot = KeyHashing.mix(key) & mask;
+            long stored;
+            while ((stored = getLong(slot, 0)) != 0 && stored != key + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private MappedByteBuffer segment(long slot) {
+            return segments[(int) (slot / segmentRecords)];
+        }
+
+        private int position(long slot, int offset) {
+            return (int) (slot % segmentRecords) * recordSize + offset;
+        }
+
+        // Smallest power of two that holds the given number of records under the load factor.
+        private static int capacityFor(int records) {
+            long needed = (long) Math.ceil(Math.max(records, 1) / (double) LOAD_FACTOR);
+            if (needed > 1 << 30) {
+                throw new IllegalArgumentException("Invalid capacity.");
+            }
+            int capacity = Integer.highestOneBit((int) Math.max(needed, 2));
+            return capacity < needed ? capacity << 1 : capacity;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * A durable {@link DatabaseService} that records every change in a write-ahead log
+ * before acknowledging it, and rebuilds its state from the log on startup.
+ * <p>
+ * Every change is appended to the log first, and forced to the disk in {@link DurabilityMode#SYNC} mode,
+ * before it is applied to an in-memory delegate such as {@link ConcurrentDatabaseService}. Live changes
+ * and replayed records take the same path into the delegate, so replaying the log reproduces it: a change
+ * the delegate rejected is logged too, and is rejected again on replay. {@link #tryBorrow(String, String)}
+ * and {@link #tryReturn(String)} check the outcome first and only log the loans that succeed. How long a change waits for the
+ * disk is set by the {@link DurabilityMode}; in {@link DurabilityMode#GROUP} mode concurrent writers
+ * share a single flush. Once a background flush in {@link DurabilityMode#ASYNC} mode fails, every later
+ * change, sync and close raises its failure.
+ * <p>
+ * Each record carries its length and a CRC32 checksum. A torn record at the end of the log,
+ * left by a crash in the middle of a write, is discarded during replay. A complete record of an unknown
+ * type fails the replay instead of being skipped.
+ * Users read back from the log get their notification service from the given function.
+ */
+public class WriteAheadLogDatabaseService extends ForwardingDatabaseService implements Closeable {
+
+    // Interval between background flushes in ASYNC mode.
+    private static final long ASYNC_FLUSH_MILLIS = 100;
+
+    // Record types.
+    private static final byte ADD_BOOK = 1;
+    private static final byte REGISTER_USER = 2;
+    private static final byte BORROW_BOOK = 3;
+    private static final byte RETURN_BOOK = 4;
+
+    // Length and checksum that precede every record.
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final FileChannel channel;
+    private final DurabilityMode mode;
+    private final Function<String, NotificationService> notificationServices;
+
+    // Serializes appending a change to the log and applying it to the delegate.
+    private final Object appendLock = new Object();
+
+    // Log position up to which records were written, and up to which they are known to be on disk.
+    private volatile long writtenPosition;
+    private long durablePosition;
+
+    // Group commit state: one writer at a time forces the log while the others wait for it.
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncInProgress;
+
+    // Forces the log periodically in ASYNC mode, null otherwise.
+    private final ScheduledExecutorService flusher;
+
+    // The failure of a background flush, raised by every later change.
+    private volatile UncheckedIOException flushFailure;
+
+    /**
+     * Opens the log, replaying the changes it already holds into the delegate.
+     * The delegate should be empty when it is passed in.
+     *
+     * @param logFile              The log file, created if it does not exist.
+     * @param delegate             The database service holding the current state.
+     * @param mode                 When changes are forced to the disk.
+     * @param notificationServices Supplies the notification service of a user, given the user Id.
+     * @throws UncheckedIOException If the log cannot be read or opened.
+     */
+    public WriteAheadLogDatabaseService(Path logFile, DatabaseService delegate, DurabilityMode mode,
+                                        Function<String, NotificationService> notificationServices) {
+        super(delegate);
+        if (mode == null) {
+            throw new IllegalArgumentException("Invalid durability mode.");
+        }
+        if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        this.mode = mode;
+        this.notificationServices = notificationServices;
+        try {
+            this.channel = FileChannel.open(logFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long end = replay();
+                channel.truncate(end);
+                channel.position(end);
+                channel.force(true);
+                this.writtenPosition = end;
+                this.durablePosition = end;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (mode == DurabilityMode.ASYNC) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly,
+                    ASYNC_FLUSH_MILLIS, ASYNC_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        byte[] record = record(ADD_BOOK, ISBN, book.getTitle(), book.getAuthor());
+        long position;
+        synchronized (appendLock) {
+            position = append(record);
+            delegate.addBook(ISBN, book);
+        }
+        awaitDurable(position);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        byte[] record = record(REGISTER_USER, id, user.getName());
+        long position;
+        synchronized (appendLock) {
+            position = append(record);
+            delegate.registerUser(id, user);
+        }
+        awaitDurable(position);
+    }
+
+    /**
+     * Records a loan and marks the book as borrowed, exactly as replaying the log does.
+     */
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        byte[] record = record(BORROW_BOOK, ISBN, userId);
+        long position;
+        synchronized (appendLock) {
+            position = append(record);
+            borrow(ISBN, userId);
+        }
+        awaitDurable(position);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        borrowBook(IsbnCodec.format(ISBN), userId);
+    }
+
+    /**
+     * Clears a loan and marks the book as not borrowed, exactly as replaying the log does.
+     */
+    @Override
+    public void returnBook(String ISBN) {
+        byte[] record = record(RETURN_BOOK, ISBN);
+        long position;
+        synchronized (appendLock) {
+            position = append(record);
+            giveBack(ISBN);
+        }
+        awaitDurable(position);
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        returnBook(IsbnCodec.format(ISBN));
+    }
+
+    /**
+     * Borrows a book the same way as {@link #borrowBook(String, String)}, reporting a rejected loan as a result.
+     * The outcome is checked against the delegate first, so a rejected loan is neither logged nor flushed.
+     */
+    @Override
+    public LoanResult tryBorrow(String ISBN, String userId) {
+        if (!IsbnCodec.isValid(ISBN)) {
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        if (userId == null) {
+            return LoanResult.USER_NOT_REGISTERED;
+        }
+        long position;
+        synchronized (appendLock) {
+            BookContext context = delegate.loadContext(ISBN, userId);
+            if (context.getBook() == null) {
+                return LoanResult.BOOK_NOT_FOUND;
+            }
+            if (context.getUser() == null) {
+                return LoanResult.USER_NOT_REGISTERED;
+            }
+            if (context.getBook().isBorrowed()) {
+                return LoanResult.ALREADY_BORROWED;
+            }
+            position = append(record(BORROW_BOOK, ISBN, userId));
+            borrow(ISBN, userId);
+        }
+        awaitDurable(position);
+        return LoanResult.OK;
+    }
+
+    /**
+     * Returns a book the same way as {@link #returnBook(String)}, reporting a rejected return as a result.
+     * The outcome is checked against the delegate first, so a rejected return is neither logged nor flushed.
+     */
+    @Override
+    public LoanResult tryReturn(String ISBN) {
+        if (!IsbnCodec.isValid(ISBN)) {
+            return LoanResult.BOOK_NOT_FOUND;
+        }
+        long position;
+        synchronized (appendLock) {
+            Book book = delegate.getBookByISBN(ISBN);
+            if (book == null) {
+                return LoanResult.BOOK_NOT_FOUND;
+            }
+            if (!book.isBorrowed()) {
+                return LoanResult.NOT_BORROWED;
+            }
+            position = append(record(RETURN_BOOK, ISBN));
+            giveBack(ISBN);
+        }
+        awaitDurable(position);
+        return LoanResult.OK;
+    }
+
+    /**
+     * Adds several books, logging them together so that the batch waits for a single flush.
+     *
+     * @param books The books to be added, keyed by their ISBN.
+     * @return The books that could not be added, keyed by ISBN, mapped to the exception that rejected them.
+     */
+    @Override
+    public Map<String, RuntimeException> addBooks(Map<String, Book> books) {
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        long position = 0;
+        synchronized (appendLock) {
+            for (Map.Entry<String, Book> entry : books.entrySet()) {
+                try {
+                    Book book = entry.getValue();
+                    if (book == null) {
+                        throw new IllegalArgumentException("Invalid book.");
+                    }
+                    byte[] record = record(ADD_BOOK, entry.getKey(), book.getTitle(), book.getAuthor());
+                    position = append(record);
+                    delegate.addBook(entry.getKey(), book);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    failures.put(entry.getKey(), e);
+                }
+            }
+        }
+        awaitDurable(position);
+        return failures;
+    }
+
+    /**
+     * Registers several users, logging them together so that the batch waits for a single flush.
+     *
+     * @param users The users to be registered, keyed by their ID.
+     * @return The users that could not be registered, keyed by ID, mapped to the exception that rejected them.
+     */
+    @Override
+    public Map<String, RuntimeException> registerUsers(Map<String, User> users) {
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        long position = 0;
+        synchronized (appendLock) {
+            for (Map.Entry<String, User> entry : users.entrySet()) {
+                try {
+                    User user = entry.getValue();
+                    if (user == null) {
+                        throw new IllegalArgumentException("Invalid user.");
+                    }
+                    byte[] record = record(REGISTER_USER, entry.getKey(), user.getName());
+                    position = append(record);
+                    delegate.registerUser(entry.getKey(), user);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    failures.put(entry.getKey(), e);
+                }
+            }
+        }
+        awaitDurable(position);
+        return failures;
+    }
+
+    /**
+     * Forces every change logged so far to the disk, whatever the durability mode.
+     */
+    public void sync() {
+        checkFlushed();
+        awaitForced(writtenPosition);
+    }
+
+    /**
+     * Retrieves the size of the log.
+     *
+     * @return The number of bytes written to the log.
+     */
+    public long logSize() {
+        return writtenPosition;
+    }
+
+    /**
+     * Forces the log to the disk and closes it. The log is closed even if forcing it fails.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (appendLock) {
+            try {
+                sync();
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    // Appends an encoded record while holding the append lock, returning the log position after it.
+    private long append(byte[] record) {
+        checkFlushed();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            writtenPosition += record.length;
+            if (mode == DurabilityMode.SYNC) {
+                channel.force(false);
+            }
+            return writtenPosition;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Waits as required by the durability mode until the log is on disk up to the given position.
+    private void awaitDurable(long position) {
+        if (mode == DurabilityMode.GROUP) {
+            awaitForced(position);
+        }
+    }
+
+    // Group commit: the first writer to find the log behind becomes the leader and forces
+    // everything written so far; writers arriving meanwhile wait and are covered by the next flush.
+    private void awaitForced(long position) {
+        syncLock.lock();
+        try {
+            while (durablePosition < position) {
+                if (syncInProgress) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncInProgress = true;
+                long target = writtenPosition;
+                IOException failure = null;
+                syncLock.unlock();
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    syncLock.lock();
+                    syncInProgress = false;
+                    if (failure == null) {
+                        durablePosition = Math.max(durablePosition, target);
+                    }
+                    synced.signalAll();
+                }
+                if (failure != null) {
+                    throw new UncheckedIOException(failure);
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Flushes in the background, keeping the first failure for the writers to raise.
+    private void flushQuietly() {
+        try {
+            sync();
+        } catch (UncheckedIOException e) {
+            if (flushFailure == null) {
+                flushFailure = e;
+            }
+        }
+    }
+
+    private void checkFlushed() {
+        UncheckedIOException failure = flushFailure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Records a loan in the delegate, then marks the book as borrowed unless the caller already did.
+    private void borrow(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+        Book book = delegate.getBookByISBN(ISBN);
+        if (book != null && !book.isBorrowed()) {
+            book.borrow();
+        }
+    }
+
+    // Clears a loan in the delegate, then marks the book as not borrowed unless the caller already did.
+    private void giveBack(String ISBN) {
+        delegate.returnBook(ISBN);
+        Book book = delegate.getBookByISBN(ISBN);
+        if (book != null && book.isBorrowed()) {
+            book.returnBook();
+        }
+    }
+
+    // Replays every complete record into the delegate, returning the position after the last one.
+    private long replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= size) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            readFully(header, position);
+            int length = header.getInt(0);
+            long checksum = header.getInt(4) & 0xFFFFFFFFL;
+            if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + RECORD_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, length);
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                apply(new DataInputStream(new ByteArrayInputStream(payload.array())));
+            } catch (IllegalArgumentException | IllegalStateException | BookNotFoundException
+                     | UserNotRegisteredException | BookAlreadyBorrowedException | BookNotBorrowedException e) {
+                // The change was rejected when it was made, too.
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    // Applies one logged change to the delegate the same way it was applied when it was made.
+    private void apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_BOOK: {
+                String ISBN = in.readUTF();
+                delegate.addBook(ISBN, new Book(ISBN, in.readUTF(), in.readUTF()));
+                break;
+            }
+            case REGISTER_USER: {
+                String id = in.readUTF();
+                delegate.registerUser(id, new User(in.readUTF(), id, notificationServices.apply(id)));
+                break;
+            }
+            case BORROW_BOOK: {
+                String ISBN = in.readUTF();
+                borrow(ISBN, in.readUTF());
+                break;
+            }
+            case RETURN_BOOK:
+                giveBack(in.readUTF());
+                break;
+            default:
+                // Not a rejected change: the log was written by another version, so recovery cannot go on.
+                throw new IOException("Unknown write-ahead log record type " + type + ".");
+        }
+    }
+
+    // Encodes a record: length, CRC32 of the payload, then the type and string fields.
+    private static byte[] record(byte type, String... fields) {
+        for (String field : fields) {
+            if (field == null) {
+                throw new IllegalArgumentException("Invalid record.");
+            }
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(type);
+            for (String field : fields) {
+                out.writeUTF(field);
+            }
+            byte[] record = bytes.toByteArray();
+            int length = record.length - RECORD_HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(record, RECORD_HEADER_BYTES, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual-thread executors for {@link RequestExecutors}.
+ * <p>
+ * This is the Java 21 version. The {@code java21} profile compiles it into {@code META-INF/versions/21}
+ * of the multi-release jar, where it replaces the reflective Java 8 version.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks if the running Java version has virtual threads.
+     *
+     * @return Always true.
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread.
+     *
+     * @return The executor.
+     */
+    static ExecutorService newPerTaskExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
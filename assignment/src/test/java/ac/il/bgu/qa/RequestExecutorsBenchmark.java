@@ -0,0 +1,64 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many blocking requests per second the executors of {@link RequestExecutors} complete.
+ * <p>
+ * Each request sleeps to stand in for a service call waiting on I/O. The harness runs the same requests on a fixed
+ * pool of platform threads and on {@link RequestExecutors#newPerRequestExecutor(int)}, and prints both rates.
+ * On Java 21 the second executor uses virtual threads; before that it is the same fixed pool.
+ * Run it after {@code mvn test-compile} with
+ * {@code java -cp target/classes:target/test-classes ac.il.bgu.qa.RequestExecutorsBenchmark [requests] [latencyMillis] [threads]}.
+ */
+public final class RequestExecutorsBenchmark {
+
+    private RequestExecutorsBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        System.out.printf("%d requests, %d ms each, %d platform threads, virtual threads %s%n",
+                requests, latencyMillis, threads,
+                RequestExecutors.isVirtualThreadsSupported() ? "available" : "not available");
+        // Warm up both executors before measuring.
+        run(Executors.newFixedThreadPool(threads), requests / 10, latencyMillis);
+        run(RequestExecutors.newPerRequestExecutor(threads), requests / 10, latencyMillis);
+        report("fixed pool", run(Executors.newFixedThreadPool(threads), requests, latencyMillis), requests);
+        report("per request", run(RequestExecutors.newPerRequestExecutor(threads), requests, latencyMillis), requests);
+    }
+
+    private static long run(ExecutorService executor, int requests, long latencyMillis) throws Exception {
+        try {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] calls = new CompletableFuture<?>[requests];
+            for (int i = 0; i < requests; i++) {
+                calls[i] = CompletableFuture.runAsync(() -> sleep(latencyMillis), executor);
+            }
+            CompletableFuture.allOf(calls).get();
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void report(String name, long nanos, int requests) {
+        System.out.printf("%-12s %8.0f requests/s (%d ms)%n",
+                name, requests / (nanos / 1e9), TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+}
@@ -0,0 +1,94 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.*;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestAsyncLibrary {
+    @Mock
+    DatabaseService mockDataBaseService;
+    @Mock
+    ReviewService mockReviewService;
+    @Mock
+    NotificationService mockNotificationService;
+
+    // Runs every call on the calling thread, so the stages are complete when the methods return.
+    Executor executor = Runnable::run;
+
+    AsyncLibrary library;
+    Book book = new Book("978-92-95055-02-5", "title", "Mark Twain");
+    User user;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.openMocks(this);
+        when(mockDataBaseService.loadContext(any(), any())).thenCallRealMethod();
+        when(mockDataBaseService.getUserById(anyLong())).thenCallRealMethod();
+        user = new User("name", "123456789101", mockNotificationService);
+        library = new AsyncLibrary(mockDataBaseService, mockReviewService, executor);
+    }
+
+    @Test
+    public void givenUnregisteredUser_whenBorrowBook_thenCompleteWithUserNotRegisteredException() {
+        when(mockDataBaseService.tryBorrow("978-92-95055-02-5", "123456789101")).thenReturn(LoanResult.USER_NOT_REGISTERED);
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> library.borrowBook("978-92-95055-02-5", "123456789101").toCompletableFuture().join());
+        assertInstanceOf(UserNotRegisteredException.class, thrown.getCause());
+    }
+
+    @Test
+    public void givenInvalidUserIdAndMissingBook_whenBorrowBook_thenCompleteWithBookNotFoundException() {
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> library.borrowBook("978-92-95055-02-5", "123").toCompletableFuture().join());
+        assertInstanceOf(BookNotFoundException.class, thrown.getCause());
+        verify(mockDataBaseService, never()).tryBorrow(anyString(), anyString());
+    }
+
+    @Test
+    public void givenRejectingExecutor_whenBorrowBook_thenCompleteExceptionallyInsteadOfThrowing() {
+        AsyncLibrary rejecting = new AsyncLibrary(mockDataBaseService, mockReviewService, task -> {
+            throw new RejectedExecutionException();
+        });
+
+        CompletionStage<Void> borrowed = rejecting.borrowBook("978-92-95055-02-5", "123456789101");
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> borrowed.toCompletableFuture().join());
+        assertInstanceOf(RejectedExecutionException.class, thrown.getCause());
+        verifyNoInteractions(mockDataBaseService);
+    }
+
+    @Test
+    public void givenReviewServiceFailing_whenNotifyUserWithBookReviews_thenCompleteWithReviewServiceUnavailable() {
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(book);
+        when(mockDataBaseService.getUserById("123456789101")).thenReturn(user);
+        when(mockReviewService.getReviewsForBook("978-92-95055-02-5")).thenThrow(new ReviewException("down"));
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> library.notifyUserWithBookReviews("978-92-95055-02-5", "123456789101").toCompletableFuture().join());
+        assertInstanceOf(ReviewServiceUnavailableException.class, thrown.getCause());
+        verify(mockReviewService, never()).close();
+        verifyNoInteractions(mockNotificationService);
+    }
+
+    @Test
+    public void givenNotificationAlwaysFailing_whenGetBookByISBN_thenRetryFiveTimesAndStillReturnTheBook() {
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(book);
+        when(mockDataBaseService.getUserById("123456789101")).thenReturn(user);
+        when(mockReviewService.getReviewsForBook("978-92-95055-02-5")).thenReturn(Collections.singletonList("great"));
+        doThrow(new NotificationException("down")).when(mockNotificationService).notifyUser(anyString(), anyString());
+
+        assertSame(book, library.getBookByISBN("978-92-95055-02-5", "123456789101").toCompletableFuture().join());
+        verify(mockNotificationService, times(5)).notifyUser("123456789101", "Reviews for 'title':\ngreat");
+    }
+}
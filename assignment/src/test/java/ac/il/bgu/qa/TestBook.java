@@ -0,0 +1,74 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBook {
+
+    Book book;
+
+    @BeforeEach
+    public void init() {
+        book = new Book("978-92-95055-02-5", "title", "Mark Twain");
+    }
+
+    @Test
+    public void givenBorrowedBook_whenBorrowAgain_thenRaiseIllegalStateException() {
+        book.borrow();
+        Exception testException = assertThrows(IllegalStateException.class, () -> book.borrow());
+        assertEquals("Book is already borrowed!", testException.getMessage());
+        assertTrue(book.isBorrowed());
+    }
+
+    @Test
+    public void givenAvailableBook_whenReturnBook_thenRaiseIllegalStateException() {
+        Exception testException = assertThrows(IllegalStateException.class, () -> book.returnBook());
+        assertEquals("ac.il.bgu.qa.Book wasn't borrowed!", testException.getMessage());
+        assertFalse(book.isBorrowed());
+    }
+
+    @Test
+    public void givenManyThreadsBorrowingAndReturningOneBook_whenBorrowAndReturnBook_thenNoChangeIsLost() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger borrowed = new AtomicInteger();
+        AtomicInteger returned = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < 100_000; j++) {
+                    try {
+                        book.borrow();
+                        borrowed.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        // another thread holds the book
+                    }
+                    try {
+                        book.returnBook();
+                        returned.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        // another thread returned the book first
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Every successful borrow is matched by exactly one successful return, except possibly the last.
+        assertEquals(borrowed.get(), returned.get() + (book.isBorrowed() ? 1 : 0));
+        assertTrue(borrowed.get() > 0);
+    }
+}
@@ -0,0 +1,74 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.*;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIsbnCodec {
+
+    @Test
+    public void givenValidISBNWithAndWithoutHyphens_whenPack_thenBothGiveTheSameValue() {
+        assertEquals(9789295055025L, IsbnCodec.pack("978-92-95055-02-5"));
+        assertEquals(9789295055025L, IsbnCodec.pack("9789295055025"));
+        assertEquals(9789295055025L, IsbnCodec.pack("-978-92-95055-02-5-"));
+    }
+
+    @Test
+    public void givenInvalidISBNs_whenIsValid_thenReturnFalse() {
+        assertFalse(IsbnCodec.isValid(null));
+        assertFalse(IsbnCodec.isValid(""));
+        assertFalse(IsbnCodec.isValid("978-0-13-12456-7"));
+        assertFalse(IsbnCodec.isValid("978-0-13-12456-712"));
+        assertFalse(IsbnCodec.isValid("978-0-13-124b6-7"));
+        assertFalse(IsbnCodec.isValid("978-92-95055-02-7"));
+        assertFalse(IsbnCodec.isValid("678-0-13-123456-4"));
+        assertFalse(IsbnCodec.isValid("978 92 95055 02 5"));
+        assertFalse(IsbnCodec.isValid("\uFF1978-92-95055-02-5"));
+    }
+
+    @Test
+    public void givenTwelveOrThirteenDigits_whenCheckDigit_thenReturnTheISBN13CheckDigit() {
+        assertEquals(5, IsbnCodec.checkDigit("978-92-95055-02"));
+        assertEquals(5, IsbnCodec.checkDigit("978-92-95055-02-7"));
+        assertEquals(-1, IsbnCodec.checkDigit("978-92-95055"));
+        assertEquals(-1, IsbnCodec.checkDigit(null));
+    }
+
+    @Test
+    public void givenISBNWithLeadingZero_whenNormalize_thenKeepAllThirteenDigits() {
+        String isbn = "012345678901" + IsbnCodec.checkDigit("012345678901");
+        assertEquals(isbn, IsbnCodec.normalize("0-12345-678901-" + isbn.charAt(12)));
+        assertEquals(isbn, IsbnCodec.format(IsbnCodec.pack(isbn)));
+        assertNull(IsbnCodec.normalize("978-92-95055-02-7"));
+    }
+
+    @Test
+    public void givenManyCalls_whenPack_thenNoBytesAreAllocatedPerCall() {
+        // Allocation benchmark: the per-thread allocation counter of the JVM must not move
+        // by more than the noise of reading it, however many ISBNs are validated.
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        String[] isbns = {"978-92-95055-02-5", "9789295055025", "978-0-13-124b6-7", "978-92-95055-02-7"};
+        int calls = 1_000_000;
+        long checksum = 0;
+        for (int i = 0; i < calls; i++) {
+            checksum += IsbnCodec.pack(isbns[i & 3]);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            checksum += IsbnCodec.pack(isbns[i & 3]);
+            checksum += IsbnCodec.checkDigit(isbns[i & 3]);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertNotEquals(0, checksum);
+        assertEquals(0, allocated / calls, "Allocated " + allocated + " bytes over " + calls + " calls");
+    }
+}
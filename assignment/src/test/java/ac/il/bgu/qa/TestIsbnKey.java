@@ -0,0 +1,48 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIsbnKey {
+
+    @Test
+    public void givenSameISBNInDifferentHyphenations_whenOf_thenKeysAreEqualWithEqualHashes() {
+        IsbnKey plain = IsbnKey.of("9789295055025");
+        IsbnKey hyphenated = IsbnKey.of("978-92-95055-02-5");
+        assertEquals(plain, hyphenated);
+        assertEquals(plain.hashCode(), hyphenated.hashCode());
+        assertEquals(0, plain.compareTo(hyphenated));
+
+        Set<IsbnKey> keys = new HashSet<>();
+        keys.add(plain);
+        assertTrue(keys.contains(IsbnKey.of("-978-9295-055025-")));
+        assertNotEquals(plain, IsbnKey.of("978-0-306-40615-7"));
+        assertTrue(IsbnKey.of("978-0-306-40615-7").compareTo(plain) < 0);
+    }
+
+    @Test
+    public void givenInvalidISBNs_whenOfOrValueOf_thenRaiseIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.of(null));
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.of("978-92-95055-02-7"));
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.of("978-92-95055-02"));
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.valueOf(-1L));
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.valueOf(9789295055027L));
+        assertThrows(IllegalArgumentException.class, () -> IsbnKey.valueOf(10_000_000_000_000L));
+    }
+
+    @Test
+    public void givenKey_whenFormattedAndParsedBack_thenRoundTripThroughIsbnCodec() {
+        IsbnKey key = IsbnKey.of("978-0-306-40615-7");
+        assertEquals(IsbnCodec.format(key.toLong()), key.toString());
+        assertEquals(key, IsbnKey.of(key.toString()));
+        assertEquals(key, IsbnKey.valueOf(IsbnCodec.pack(key.toString())));
+
+        // Leading zeros survive the round trip.
+        IsbnKey leadingZeros = IsbnKey.valueOf(IsbnCodec.pack("0000000000000"));
+        assertEquals("0000000000000", leadingZeros.toString());
+    }
+}
@@ -6,8 +6,13 @@ import org.junit.jupiter.api.*;
 import org.mockito.*;
 
 import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -31,6 +36,15 @@ public class TestLibrary {
     @BeforeEach
     public void init() {
         MockitoAnnotations.openMocks(this);
+        // Library fetches the book and the user through loadContext, whose default implementation
+        // looks them up with the getBookByISBN and getUserById calls stubbed by each test.
+        when(mockDataBaseService.loadContext(any(), any())).thenCallRealMethod();
+        // The same holds for tryBorrow and tryReturn, which check and update the book through those calls.
+        when(mockDataBaseService.tryBorrow(any(), any())).thenCallRealMethod();
+        when(mockDataBaseService.tryReturn(any())).thenCallRealMethod();
+        // Library looks users up by numeric Id, whose default implementation
+        // falls back to the getUserById(String) call stubbed by each test.
+        when(mockDataBaseService.getUserById(anyLong())).thenCallRealMethod();
     }
 
     @Test
@@ -1013,4 +1027,328 @@ public class TestLibrary {
         when(mockDataBaseService.getUserById(anyString())).thenReturn(mockUser);
         assertTrue(library.getBookByISBN("978-92-95055-02-5","123456789101") instanceof Book);
     }
+
+    @Test
+    public void givenDatabaseLoadsTheContextInOneCall_whenBorrowBook_thenBookAndUserAreNotLookedUpSeparately()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService);
+        doReturn(new BookContext(mockBook, mockUser)).when(mockDataBaseService).loadContext("978-92-95055-02-5", "123456789101");
+        when(mockBook.isBorrowed()).thenReturn(false);
+
+        library.borrowBook("978-92-95055-02-5", "123456789101");
+
+        verify(mockDataBaseService, never()).getBookByISBN(anyString());
+        verify(mockDataBaseService, never()).getUserById(anyString());
+        verify(mockBook).borrow();
+        verify(mockDataBaseService).borrowBook("978-92-95055-02-5", "123456789101");
+    }
+
+    @Test
+    public void givenStripedLocks_whenBorrowBookFails_thenTheLockIsReleased()
+    {
+        StripedLock locks = new StripedLock(16);
+        Library library = new Library(mockDataBaseService, mockReviewService, new Library.Options().locks(locks));
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(mockBook);
+        when(mockDataBaseService.getUserById("123456789101")).thenReturn(mockUser);
+        when(mockBook.isBorrowed()).thenReturn(true);
+
+        assertThrows(BookAlreadyBorrowedException.class, () -> {
+            library.borrowBook("978-92-95055-02-5", "123456789101");
+        });
+        when(mockBook.isBorrowed()).thenReturn(false);
+        Exception testException = assertThrows(BookNotBorrowedException.class, () -> {
+            library.returnBook("978-92-95055-02-5");
+        });
+
+        assertEquals("Book wasn't borrowed!", testException.getMessage());
+        assertEquals(2, locks.getAcquisitionCount());
+        assertEquals(0, locks.getContendedCount());
+        // The lock is reentrant, so a hold count of one shows both earlier holds were released.
+        ReentrantLock lock = (ReentrantLock) locks.lock(9789295055025L);
+        assertEquals(1, lock.getHoldCount());
+        lock.unlock();
+    }
+
+    @Test
+    public void givenInvalidAuthor_whenGetBooksByAuthor_thenRaiseIllegalArgumentException()
+    {
+        CatalogIndex mockCatalogIndex = mock(CatalogIndex.class);
+        Library library = new Library(mockDataBaseService, mockReviewService,
+                new Library.Options().catalogIndex(mockCatalogIndex));
+        Exception testException = assertThrows(IllegalArgumentException.class, () -> {
+            library.getBooksByAuthor("Mark--Twain");
+        });
+        assertEquals("Invalid author.", testException.getMessage());
+        verify(mockCatalogIndex, never()).getBooksByAuthor(anyString());
+    }
+
+    @Test
+    public void givenDatabaseWithoutCatalogIndex_whenGetBooksByAuthor_thenRaiseUnsupportedOperationException()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService);
+        Exception testException = assertThrows(UnsupportedOperationException.class, () -> {
+            library.getBooksByAuthor("Mark Twain");
+        });
+        assertEquals("Catalog lookups are not supported.", testException.getMessage());
+    }
+
+    //Tests for addBooks(Collection<Book> books) and registerUsers(Collection<User> users)
+    @Test
+    public void givenBatchWithInvalidExistingAndRepeatedBooks_whenAddBooks_thenOnlyTheValidBooksAreAddedInOneCall()
+    {
+        // 1. Arrange
+        // 1.1 create an instance of Library with mocks
+        Library library = new Library(mockDataBaseService, mockReviewService);
+        Book valid = new Book("978-92-95055-02-5", "title", "Mark Twain");
+        Book invalidISBN = new Book("978-92-95055-02-7", "title", "Mark Twain");
+        Book existing = new Book("978-0-306-40615-7", "title", "Mark Twain");
+        Book repeated = new Book("9789295055025", "title", "Mark Twain");
+        Map<String, Book> stored = new HashMap<>();
+        stored.put("978-0-306-40615-7", existing);
+        when(mockDataBaseService.getBooksByISBN(anyCollection())).thenReturn(stored);
+
+        //2. Action
+        BatchResult<Book> result = library.addBooks(Arrays.asList(valid, invalidISBN, existing, repeated));
+
+        //3. Assertion
+        Map<String, Book> added = new LinkedHashMap<>();
+        added.put("978-92-95055-02-5", valid);
+        verify(mockDataBaseService).addBooks(added);
+        verify(mockDataBaseService, never()).addBook(anyString(), any());
+        assertEquals(Collections.singletonList(valid), result.getSucceeded());
+        List<BatchResult.Failure<Book>> failures = result.getFailures();
+        assertEquals(3, failures.size());
+        assertSame(invalidISBN, failures.get(0).getItem());
+        assertEquals("Invalid ISBN.", failures.get(0).getException().getMessage());
+        assertSame(existing, failures.get(1).getItem());
+        assertEquals("Book already exists.", failures.get(1).getException().getMessage());
+        assertEquals(3, failures.get(2).getIndex());
+        assertSame(repeated, failures.get(2).getItem());
+        assertEquals("Book already exists.", failures.get(2).getException().getMessage());
+    }
+
+    @Test
+    public void givenDatabaseRejectsABook_whenAddBooks_thenTheRejectionIsReportedForThatBook()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService);
+        Book first = new Book("978-92-95055-02-5", "title", "Mark Twain");
+        Book second = new Book("978-0-306-40615-7", "title", "Mark Twain");
+        Map<String, RuntimeException> rejected = new HashMap<>();
+        rejected.put("978-0-306-40615-7", new IllegalStateException("Database is full."));
+        when(mockDataBaseService.addBooks(anyMap())).thenReturn(rejected);
+
+        BatchResult<Book> result = library.addBooks(Arrays.asList(first, second));
+
+        assertFalse(result.isSuccessful());
+        assertEquals(Collections.singletonList(first), result.getSucceeded());
+        assertEquals(1, result.getFailures().get(0).getIndex());
+        assertEquals("Database is full.", result.getFailures().get(0).getException().getMessage());
+    }
+
+    @Test
+    public void givenBatchWithInvalidAndRegisteredUsers_whenRegisterUsers_thenOnlyTheValidUsersAreRegistered()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService);
+        User valid = new User("name", "123456789101", mockNotificationService);
+        User invalidId = new User("name", "12345678910", mockNotificationService);
+        User registered = new User("name", "109876543210", mockNotificationService);
+        Map<String, User> stored = new HashMap<>();
+        stored.put("109876543210", registered);
+        when(mockDataBaseService.getUsersById(anyCollection())).thenReturn(stored);
+
+        BatchResult<User> result = library.registerUsers(Arrays.asList(valid, invalidId, registered));
+
+        Map<String, User> added = new LinkedHashMap<>();
+        added.put("123456789101", valid);
+        verify(mockDataBaseService).registerUsers(added);
+        verify(mockDataBaseService, never()).registerUser(anyString(), any());
+        assertEquals(Collections.singletonList(valid), result.getSucceeded());
+        assertEquals("Invalid user Id.", result.getFailures().get(0).getException().getMessage());
+        assertSame(registered, result.getFailures().get(1).getItem());
+        assertEquals("User already exists.", result.getFailures().get(1).getException().getMessage());
+    }
+
+    @Test
+    public void givenBatchWithNullAndEqualUsers_whenRegisterUsers_thenEachIsReportedAtItsPosition()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService);
+        User valid = new User("name", "123456789101", mockNotificationService);
+        User repeated = new User("name", "123456789101", mockNotificationService);
+
+        BatchResult<User> result = library.registerUsers(Arrays.asList(null, valid, null, repeated));
+
+        assertEquals(Collections.singletonList(valid), result.getSucceeded());
+        List<BatchResult.Failure<User>> failures = result.getFailures();
+        assertEquals(3, failures.size());
+        assertEquals(0, failures.get(0).getIndex());
+        assertNull(failures.get(0).getItem());
+        assertEquals(2, failures.get(1).getIndex());
+        assertEquals(3, failures.get(2).getIndex());
+        assertEquals("User already exists.", failures.get(2).getException().getMessage());
+    }
+
+    @Test
+    public void givenLibraryWithLocks_whenAddBooks_thenTheLocksOfTheBatchAreHeldUntilTheBooksAreAdded()
+    {
+        StripedLock locks = new StripedLock(4);
+        Library library = new Library(mockDataBaseService, mockReviewService, new Library.Options().locks(locks));
+        Book first = new Book("978-92-95055-02-5", "title", "Mark Twain");
+        Book second = new Book("978-0-306-40615-7", "title", "Mark Twain");
+        when(mockDataBaseService.addBooks(anyMap())).thenAnswer(invocation -> {
+            assertTrue(stripeOf(locks, first).isHeldByCurrentThread());
+            assertTrue(stripeOf(locks, second).isHeldByCurrentThread());
+            return Collections.emptyMap();
+        });
+
+        BatchResult<Book> result = library.addBooks(Arrays.asList(first, second));
+
+        assertTrue(result.isSuccessful());
+        assertFalse(stripeOf(locks, first).isLocked());
+        assertFalse(stripeOf(locks, second).isLocked());
+    }
+
+    // Finds the lock of the stripe of a book, taking and releasing it once.
+    private static ReentrantLock stripeOf(StripedLock locks, Book book) {
+        ReentrantLock lock = (ReentrantLock) locks.lock(IsbnCodec.pack(book.getISBN()));
+        lock.unlock();
+        return lock;
+    }
+
+    @Test
+    public void givenCatalogLargerThanAPage_whenListBooks_thenFollowTheTokensThroughEveryBookInOrder()
+    {
+        IndexedDatabaseService databaseService = new IndexedDatabaseService(new ConcurrentDatabaseService());
+        Library library = new Library(databaseService, mockReviewService);
+        Book first = new Book("978-0-306-40615-7", "title", "Mark Twain");
+        Book second = new Book("978-1-86197-876-9", "title", "Mark Twain");
+        Book third = new Book("978-92-95055-02-5", "title", "Mark Twain");
+        library.addBook(third);
+        library.addBook(first);
+        library.addBook(second);
+
+        Page<Book> page = library.listBooks(null, 2);
+        assertEquals(Arrays.asList(first, second), page.getItems());
+        assertEquals("9789295055025", page.getNextPageToken());
+
+        page = library.listBooks(page.getNextPageToken(), 2);
+        assertEquals(Collections.singletonList(third), page.getItems());
+        assertFalse(page.hasNextPage());
+
+        assertEquals("Invalid page token.", assertThrows(IllegalArgumentException.class, () -> library.listBooks("12345", 2)).getMessage());
+        assertEquals("Invalid page size.", assertThrows(IllegalArgumentException.class, () -> library.listBooks(null, 0)).getMessage());
+    }
+
+    @Test
+    public void givenNullOptions_whenConstructLibrary_thenRaiseIllegalArgumentException()
+    {
+        Exception testException = assertThrows(IllegalArgumentException.class, () -> {
+            new Library(mockDataBaseService, mockReviewService, null);
+        });
+
+        assertEquals("Invalid options.", testException.getMessage());
+    }
+
+    @Test
+    public void givenDatabaseWithoutIndex_whenListBooks_thenRaiseUnsupportedOperationException()
+    {
+        Library library = new Library(new CompactDatabaseService(), mockReviewService);
+        library.addBook(new Book("978-0-306-40615-7", "title", "Mark Twain"));
+
+        assertThrows(UnsupportedOperationException.class, () -> library.listBooks(null, 2));
+        assertEquals(1, library.streamBooks().count());
+    }
+
+    @Test
+    public void givenReviewExecutor_whenNotifyUserWithBookReviews_thenReviewsAreFetchedWhileTheDatabaseLooksUp() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        Library library = new Library(mockDataBaseService, mockReviewService,
+                new Library.Options().reviewExecutor(executor));
+        when(mockReviewService.getReviewsForBook("978-92-95055-02-5")).thenAnswer(invocation -> {
+            fetchStarted.countDown();
+            return Collections.singletonList("great");
+        });
+        // The lookup only succeeds if the review fetch is already running alongside it.
+        doAnswer(invocation -> fetchStarted.await(5, TimeUnit.SECONDS)
+                ? new BookContext(mockBook, mockUser) : new BookContext(null, null))
+                .when(mockDataBaseService).loadContext("978-92-95055-02-5", "123456789101");
+        when(mockBook.getTitle()).thenReturn("title");
+
+        try {
+            library.notifyUserWithBookReviews("978-92-95055-02-5", "123456789101");
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(mockUser).sendNotification("Reviews for 'title':\ngreat");
+        verify(mockReviewService, never()).close();
+    }
+
+    @Test
+    public void givenReviewExecutorAndMissingBook_whenNotifyUserWithBookReviews_thenBookNotFoundTakesPrecedence()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService,
+                new Library.Options().reviewExecutor(Runnable::run));
+        when(mockReviewService.getReviewsForBook(anyString())).thenThrow(new ReviewException("down"));
+
+        Exception testException = assertThrows(BookNotFoundException.class, () -> {
+            library.notifyUserWithBookReviews("978-92-95055-02-5", "123456789101");
+        });
+
+        assertEquals("Book not found!", testException.getMessage());
+        verify(mockReviewService, never()).close();
+    }
+
+    @Test
+    public void givenQueuedReviewFetchAndMissingUser_whenNotifyUserWithBookReviews_thenTheReviewServiceIsNotUsed()
+    {
+        List<Runnable> queued = new ArrayList<>();
+        Library library = new Library(mockDataBaseService, mockReviewService,
+                new Library.Options().reviewExecutor(queued::add));
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(mockBook);
+
+        assertThrows(UserNotRegisteredException.class, () -> {
+            library.notifyUserWithBookReviews("978-92-95055-02-5", "123456789101");
+        });
+
+        // The fetch was cancelled when the lookup failed, so running it now does nothing.
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        verifyNoInteractions(mockReviewService);
+    }
+
+    @Test
+    public void givenNotificationExecutor_whenGetBookByISBN_thenReturnTheBookBeforeNotifyingWithoutLookingItUpAgain()
+    {
+        List<Runnable> queued = new ArrayList<>();
+        Library library = new Library(mockDataBaseService, mockReviewService,
+                new Library.Options().notificationExecutor(queued::add));
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(mockBook);
+        when(mockDataBaseService.getUserById("123456789101")).thenReturn(mockUser);
+        when(mockBook.getTitle()).thenReturn("title");
+        when(mockReviewService.getReviewsForBook("978-92-95055-02-5")).thenReturn(Collections.singletonList("great"));
+
+        assertSame(mockBook, library.getBookByISBN("978-92-95055-02-5", "123456789101"));
+        verifyNoInteractions(mockReviewService, mockUser);
+
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        verify(mockUser).sendNotification("Reviews for 'title':\ngreat");
+        verify(mockReviewService, never()).close();
+        verify(mockDataBaseService, times(1)).getBookByISBN("978-92-95055-02-5");
+    }
+
+    @Test
+    public void givenFullNotificationQueue_whenGetBookByISBN_thenStillReturnTheBook()
+    {
+        Library library = new Library(mockDataBaseService, mockReviewService,
+                new Library.Options().notificationExecutor(task -> {
+                    throw new RejectedExecutionException();
+                }));
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(mockBook);
+
+        assertSame(mockBook, library.getBookByISBN("978-92-95055-02-5", "123456789101"));
+        verifyNoInteractions(mockReviewService);
+    }
 }
@@ -0,0 +1,46 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestRequestExecutors {
+
+    @Test
+    public void givenAnyRuntime_whenNewPerRequestExecutor_thenEveryRequestOfTheLibraryCompletes() throws Exception {
+        ConcurrentDatabaseService databaseService = new ConcurrentDatabaseService();
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mock(NotificationService.class)));
+        List<String> ISBNs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String prefix = String.format("978%09d", i);
+            String ISBN = prefix + IsbnCodec.checkDigit(prefix);
+            databaseService.addBook(ISBN, new Book(ISBN, "title", "Mark Twain"));
+            ISBNs.add(ISBN);
+        }
+
+        ExecutorService executor = RequestExecutors.newPerRequestExecutor(4);
+        try {
+            AsyncLibrary library = new AsyncLibrary(databaseService, mock(ReviewService.class), executor);
+            CompletableFuture<?>[] loans = ISBNs.stream()
+                    .map(ISBN -> library.borrowBook(ISBN, "123456789101").toCompletableFuture())
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(loans).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(100, databaseService.loanCount());
+    }
+
+    @Test
+    public void givenNoThreads_whenNewPerRequestExecutor_thenRaiseIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> RequestExecutors.newPerRequestExecutor(0));
+    }
+}
@@ -0,0 +1,53 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStripedLock {
+
+    @Test
+    public void givenStripeHeldByAnotherThread_whenLock_thenTheWaitIsRecordedForThatStripe() throws Exception {
+        StripedLock locks = new StripedLock(8);
+        long key = 9789295055025L;
+        int stripe = locks.stripeOf(key);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holder = executor.submit(() -> {
+            Lock lock = locks.lock(key);
+            try {
+                held.countDown();
+                release.await();
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        });
+        held.await();
+        ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor();
+        releaser.schedule(release::countDown, 50, TimeUnit.MILLISECONDS);
+
+        Lock lock = locks.lock(key);
+        lock.unlock();
+        holder.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        releaser.shutdown();
+
+        assertEquals(8, locks.stripeCount());
+        assertEquals(2, locks.getAcquisitionCount());
+        assertEquals(1, locks.getContendedCount(stripe));
+        assertEquals(1, locks.getContendedCount());
+        assertTrue(locks.getWaitNanos(stripe) >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void givenStripeCountThatIsNotAPowerOfTwo_whenConstructed_thenItIsRoundedUp() {
+        assertEquals(1, new StripedLock(1).stripeCount());
+        assertEquals(16, new StripedLock(10).stripeCount());
+        assertThrows(IllegalArgumentException.class, () -> new StripedLock(0));
+    }
+}
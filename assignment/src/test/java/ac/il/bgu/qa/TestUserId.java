@@ -0,0 +1,47 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestUserId {
+
+    @Test
+    public void givenTwelveDigits_whenParse_thenReturnTheirValue() {
+        assertEquals(123456789101L, UserId.parse("123456789101"));
+        assertEquals(999999999999L, UserId.parse("999999999999"));
+        assertTrue(UserId.isValid("123456789101"));
+    }
+
+    @Test
+    public void givenLeadingZeros_whenParseAndFormat_thenKeepAllTwelveDigits() {
+        assertEquals(1L, UserId.parse("000000000001"));
+        assertEquals(0L, UserId.parse("000000000000"));
+        assertEquals("000000000001", UserId.format(1L));
+        assertEquals("000000000001", UserId.of("000000000001").toString());
+        assertEquals(UserId.of("000000000042"), UserId.valueOf(42L));
+    }
+
+    @Test
+    public void givenWrongLengthOrNonDigits_whenParse_thenReturnInvalid() {
+        assertEquals(UserId.INVALID, UserId.parse(null));
+        assertEquals(UserId.INVALID, UserId.parse(""));
+        assertEquals(UserId.INVALID, UserId.parse("12345678910"));
+        assertEquals(UserId.INVALID, UserId.parse("1234567891011"));
+        assertEquals(UserId.INVALID, UserId.parse("12345678910a"));
+        assertEquals(UserId.INVALID, UserId.parse("-12345678910"));
+        assertEquals(UserId.INVALID, UserId.parse("1234-5678-91"));
+        // Digits of other scripts are not ASCII digits.
+        assertEquals(UserId.INVALID, UserId.parse("\u0661\u0662\u0663456789101"));
+        assertEquals(UserId.INVALID, UserId.parse("\uff11\uff12\uff13456789101"));
+        assertFalse(UserId.isValid("12345678910"));
+    }
+
+    @Test
+    public void givenValuesOutsideTwelveDigits_whenValueOfOrFormat_thenRaiseIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> UserId.valueOf(-1L));
+        assertThrows(IllegalArgumentException.class, () -> UserId.valueOf(1_000_000_000_000L));
+        assertThrows(IllegalArgumentException.class, () -> UserId.format(1_000_000_000_000L));
+        assertThrows(IllegalArgumentException.class, () -> UserId.of("12345"));
+    }
+}
@@ -0,0 +1,54 @@
+package ac.il.bgu.qa.index;
+
+import org.junit.jupiter.api.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCompressedBitmap {
+
+    @Test
+    public void givenChunkGrowingPastTheArrayLimitAndShrinkingBack_whenAddAndRemove_thenContentMatchesABitSet() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int value = random.nextInt(1 << 18);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.get(value), bitmap.remove(value));
+                expected.clear(value);
+            } else {
+                assertEquals(!expected.get(value), bitmap.add(value));
+                expected.set(value);
+            }
+        }
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        assertArrayEquals(expected.stream().toArray(), bitmap.toArray());
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            bitmap.remove(value);
+        }
+        assertEquals(0, bitmap.cardinality());
+        assertEquals(0, bitmap.toArray().length);
+    }
+
+    @Test
+    public void givenSparseAndDenseSets_whenAnd_thenReturnTheCommonInts() {
+        CompressedBitmap dense = new CompressedBitmap();
+        CompressedBitmap sparse = new CompressedBitmap();
+        for (int i = 0; i < 100_000; i += 2) {
+            dense.add(i);
+        }
+        sparse.add(3);
+        sparse.add(10);
+        sparse.add(70_000);
+        sparse.add(250_000);
+
+        assertArrayEquals(new int[]{10, 70_000}, sparse.and(dense).toArray());
+        assertArrayEquals(new int[]{10, 70_000}, dense.and(sparse).toArray());
+        assertEquals(2, dense.andCardinality(sparse));
+        assertEquals(50_000, dense.and(dense).cardinality());
+        assertFalse(dense.contains(-1));
+    }
+}
@@ -0,0 +1,41 @@
+package ac.il.bgu.qa.index;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIsbnRangeIndex {
+
+    IsbnRangeIndex index;
+
+    @BeforeEach
+    public void init() {
+        index = new IsbnRangeIndex();
+        index.add(9780306406157L);
+        index.add(9789295055025L);
+        index.add(9781861978769L);
+        index.add(9780306999990L);
+    }
+
+    @Test
+    public void givenPublisherPrefix_whenPrefix_thenStreamOnlyThatPublishersISBNsInOrder() {
+        assertArrayEquals(new long[]{9780306406157L, 9780306999990L}, index.prefix("978-0-306").toArray());
+        assertArrayEquals(new long[]{9780306406157L, 9780306999990L, 9781861978769L, 9789295055025L},
+                index.prefix("978").toArray());
+        assertArrayEquals(new long[]{9789295055025L}, index.prefix("9789295055025").toArray());
+        assertEquals(0, index.prefix("979").count());
+    }
+
+    @Test
+    public void givenRange_whenRange_thenTheUpperBoundIsExcluded() {
+        assertArrayEquals(new long[]{9780306999990L, 9781861978769L},
+                index.range(9780306406158L, 9789295055025L).toArray());
+    }
+
+    @Test
+    public void givenInvalidPrefix_whenPrefixRange_thenRaiseIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> IsbnRangeIndex.prefixRange("978-X"));
+        assertThrows(IllegalArgumentException.class, () -> IsbnRangeIndex.prefixRange("--"));
+        assertThrows(IllegalArgumentException.class, () -> IsbnRangeIndex.prefixRange("97892950550251"));
+    }
+}
@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.index;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTextIndex {
+
+    TextIndex index;
+
+    @BeforeEach
+    public void init() {
+        index = new TextIndex();
+        index.add(1L, "The Hobbit", "J.R.R. Tolkien");
+        index.add(2L, "The Lord of the Rings", "J.R.R. Tolkien");
+        index.add(3L, "The Adventures of Tom Sawyer", "Mark Twain");
+        index.add(4L, "Hobbit Holes: A Field Guide", "Mark Twain");
+    }
+
+    @Test
+    public void givenPartialWord_whenSearch_thenFindTheBooksContainingIt() {
+        assertArrayEquals(new long[]{1L, 4L}, index.search("hobb", 10));
+        assertArrayEquals(new long[]{3L}, index.search("SAWY", 10));
+        assertArrayEquals(new long[0], index.search("dragon", 10));
+    }
+
+    @Test
+    public void givenQueryTrigramsSpreadOverSeveralWords_whenSearch_thenTheBookDoesNotMatch() {
+        index.add(5L, "Hobnob Orbit", "Lewis Carroll");
+        assertArrayEquals(new long[]{1L, 4L}, index.search("hobbit", 10));
+        index.add(6L, "Rehobbiting", "Lewis Carroll");
+        assertArrayEquals(new long[]{6L}, index.search("obbiti", 10));
+    }
+
+    @Test
+    public void givenWordsInTitleAndAuthor_whenSearch_thenRankBooksMatchingBothFirst() {
+        assertArrayEquals(new long[]{1L, 4L, 2L}, index.search("hobbit tolkien", 10));
+        assertArrayEquals(new long[]{1L}, index.search("hobbit tolkien", 1));
+    }
+
+    @Test
+    public void givenManyBooksWithACommonWord_whenAdded_thenPostingsTakeAboutOneBytePerBook() {
+        TextIndex large = new TextIndex();
+        for (int i = 0; i < 100_000; i++) {
+            large.add(i, "Volume " + i, "Mark Twain");
+        }
+        assertEquals(100_000, large.documentCount());
+        assertEquals(10, large.search("twain", 10).length);
+        PostingList postings = new PostingList();
+        for (int i = 0; i < 100_000; i++) {
+            postings.add(i);
+        }
+        assertEquals(100_000, postings.encodedSize());
+        assertEquals(99_999, postings.toArray()[99_999]);
+    }
+}
@@ -0,0 +1,93 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestBloomFilterDatabaseService {
+    @Mock
+    DatabaseService mockDataBaseService;
+
+    Book book = new Book("978-92-95055-02-5", "title", "Mark Twain");
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void givenEmptyCatalog_whenGetBookByISBN_thenTheDatabaseIsNotQueried() {
+        BloomFilterDatabaseService databaseService = new BloomFilterDatabaseService(mockDataBaseService, 1000, 0.01);
+        assertNull(databaseService.getBookByISBN("978-92-95055-02-5"));
+        verify(mockDataBaseService, never()).getBookByISBN(anyString());
+        assertEquals(1, databaseService.getNegativeCount());
+    }
+
+    @Test
+    public void givenAddedBook_whenGetBookByISBN_thenTheDatabaseIsQueried() {
+        BloomFilterDatabaseService databaseService = new BloomFilterDatabaseService(mockDataBaseService, 1000, 0.01);
+        databaseService.addBook("978-92-95055-02-5", book);
+        when(mockDataBaseService.getBookByISBN("9789295055025")).thenReturn(book);
+        assertSame(book, databaseService.getBookByISBN("9789295055025"));
+        verify(mockDataBaseService).addBook("978-92-95055-02-5", book);
+        assertEquals(0, databaseService.getNegativeCount());
+    }
+
+    @Test
+    public void givenBooksAddedToTheDatabaseDirectly_whenRebuild_thenTheyAreNotRuledOut() {
+        ConcurrentDatabaseService store = new ConcurrentDatabaseService();
+        BloomFilterDatabaseService databaseService = new BloomFilterDatabaseService(store, 1000, 0.01);
+        store.addBook(book.getISBN(), book);
+        assertNull(databaseService.getBookByISBN("9789295055025"));
+
+        databaseService.rebuild();
+        assertSame(book, databaseService.getBookByISBN("9789295055025"));
+        assertEquals(0, databaseService.getNegativeCount());
+        assertEquals(Collections.singletonMap("978-92-95055-02-5", book),
+                databaseService.getBooksByISBN(Arrays.asList("978-92-95055-02-5", "978-1-86197-876-9")));
+        assertEquals(1, databaseService.getNegativeCount());
+        assertThrows(UnsupportedOperationException.class,
+                () -> new BloomFilterDatabaseService(mockDataBaseService, 1000, 0.01).rebuild());
+    }
+
+    @Test
+    public void givenBooksAddedWhileRebuilding_whenGetBookByISBN_thenEveryBookIsFound() throws Exception {
+        BloomFilterDatabaseService databaseService =
+                new BloomFilterDatabaseService(new ConcurrentDatabaseService(), 16, 0.01);
+        List<String> ISBNs = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            String prefix = String.format("978%09d", i);
+            ISBNs.add(prefix + IsbnCodec.checkDigit(prefix));
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> adding = executor.submit(() -> {
+                for (String ISBN : ISBNs) {
+                    databaseService.addBook(ISBN, new Book(ISBN, "title", "author"));
+                }
+            });
+            while (!adding.isDone()) {
+                databaseService.rebuild();
+            }
+            adding.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        for (String ISBN : ISBNs) {
+            assertNotNull(databaseService.getBookByISBN(ISBN));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ac.il.bgu.qa.services;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBoundedCache {
+
+    BoundedCache<Long, String> cache = new BoundedCache<>(16);
+
+    @Test
+    public void givenLoadOfOneKey_whenAnotherKeyIsInvalidated_thenTheLoadIsStillCached() {
+        long generation = cache.generation(1L);
+        cache.invalidate(2L);
+        cache.put(1L, "loaded", generation);
+
+        assertEquals("loaded", cache.get(1L));
+    }
+
+    @Test
+    public void givenLoadOfAKey_whenTheKeyOrEveryKeyIsInvalidated_thenTheLoadIsDropped() {
+        long generation = cache.generation(1L);
+        cache.invalidate(1L);
+        cache.put(1L, "stale", generation);
+        assertNull(cache.get(1L));
+
+        generation = cache.generation(1L);
+        cache.invalidateAll();
+        cache.put(1L, "stale", generation);
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,55 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestCachingDatabaseService {
+    @Mock
+    DatabaseService mockDataBaseService;
+
+    Book book = new Book("978-92-95055-02-5", "title", "Mark Twain");
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.openMocks(this);
+        when(mockDataBaseService.getBookByISBN("978-92-95055-02-5")).thenReturn(book);
+    }
+
+    @Test
+    public void givenBookLookedUpTwice_whenGetBookByISBN_thenTheSecondLookupIsServedFromMemory() {
+        CachingDatabaseService databaseService = new CachingDatabaseService(mockDataBaseService, 10);
+        assertSame(book, databaseService.getBookByISBN("978-92-95055-02-5"));
+        assertSame(book, databaseService.getBookByISBN("9789295055025"));
+        verify(mockDataBaseService, times(1)).getBookByISBN(anyString());
+        assertEquals(1, databaseService.getHitCount());
+        assertEquals(1, databaseService.getMissCount());
+    }
+
+    @Test
+    public void givenCachedBook_whenBorrowBook_thenTheNextLookupGoesToTheDatabase() {
+        CachingDatabaseService databaseService = new CachingDatabaseService(mockDataBaseService, 10);
+        databaseService.getBookByISBN("978-92-95055-02-5");
+        databaseService.borrowBook("9789295055025", "123456789101");
+        databaseService.getBookByISBN("978-92-95055-02-5");
+        verify(mockDataBaseService, times(2)).getBookByISBN("978-92-95055-02-5");
+        verify(mockDataBaseService).borrowBook("9789295055025", "123456789101");
+    }
+
+    @Test
+    public void givenFullCache_whenARarelyRequestedBookIsLoaded_thenThePopularBookStaysCached() {
+        CachingDatabaseService databaseService = new CachingDatabaseService(mockDataBaseService, 1);
+        Book rare = new Book("978-0-306-40615-7", "title", "Mark Twain");
+        when(mockDataBaseService.getBookByISBN("978-0-306-40615-7")).thenReturn(rare);
+        for (int i = 0; i < 5; i++) {
+            databaseService.getBookByISBN("978-92-95055-02-5");
+        }
+        databaseService.getBookByISBN("978-0-306-40615-7");
+        databaseService.getBookByISBN("978-92-95055-02-5");
+        verify(mockDataBaseService, times(1)).getBookByISBN("978-92-95055-02-5");
+        assertEquals(0, databaseService.getEvictionCount());
+    }
+}
@@ -0,0 +1,116 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestCachingReviewService {
+
+    ReviewService mockReviewService = mock(ReviewService.class);
+    AtomicLong now = new AtomicLong();
+
+    @Test
+    public void givenCachedReviews_whenGetReviewsForBookBeforeAndAfterExpiry_thenFetchOnlyOncePerTimeToLive() {
+        CachingReviewService reviewService = new CachingReviewService(mockReviewService, 1024, 10, 10,
+                TimeUnit.NANOSECONDS, null, now::get);
+        List<String> reviews = Arrays.asList("great", "boring");
+        when(mockReviewService.getReviewsForBook(anyString())).thenReturn(reviews);
+
+        assertEquals(reviews, reviewService.getReviewsForBook("978-92-95055-02-5"));
+        now.set(9);
+        assertEquals(reviews, reviewService.getReviewsForBook("9789295055025"));
+        verify(mockReviewService, times(1)).getReviewsForBook(anyString());
+        reviewService.close();
+        verify(mockReviewService, never()).close();
+
+        now.set(10);
+        assertEquals(reviews, reviewService.getReviewsForBook("9789295055025"));
+        verify(mockReviewService, times(2)).getReviewsForBook(anyString());
+        assertEquals(1.0 / 3, reviewService.getHitRatio(), 1e-9);
+        assertEquals(2, reviewService.getLoadCount());
+        assertEquals(22, reviewService.getWeightedSize());
+    }
+
+    @Test
+    public void givenReviewsPastTheirRefreshTime_whenGetReviewsForBook_thenServeThemAndRefreshInTheBackground() {
+        CachingReviewService reviewService = new CachingReviewService(mockReviewService, 1024, 10, 5,
+                TimeUnit.NANOSECONDS, Runnable::run, now::get);
+        when(mockReviewService.getReviewsForBook("9789295055025"))
+                .thenReturn(Collections.singletonList("old"), Collections.singletonList("new"));
+
+        reviewService.getReviewsForBook("9789295055025");
+        now.set(6);
+        assertEquals(Collections.singletonList("old"), reviewService.getReviewsForBook("9789295055025"));
+        assertEquals(1, reviewService.getRefreshCount());
+
+        // The refresh restarted the clock of the entry, so the fresh reviews are served without another fetch.
+        now.set(10);
+        assertEquals(Collections.singletonList("new"), reviewService.getReviewsForBook("9789295055025"));
+        assertEquals(2, reviewService.getLoadCount());
+        assertEquals(2, reviewService.getHitCount());
+    }
+
+    @Test
+    public void givenFailingFetchOrTooManyReviews_whenGetReviewsForBook_thenNothingBeyondTheBoundIsCached() {
+        CachingReviewService reviewService = new CachingReviewService(mockReviewService, 12, 1, TimeUnit.HOURS);
+        when(mockReviewService.getReviewsForBook("9789295055025")).thenThrow(new ReviewException("down"));
+        when(mockReviewService.getReviewsForBook("9780306406157")).thenReturn(Collections.singletonList("great"));
+        when(mockReviewService.getReviewsForBook("9781861978769")).thenReturn(Collections.singletonList("better"));
+
+        assertThrows(ReviewException.class, () -> reviewService.getReviewsForBook("9789295055025"));
+        assertEquals(1, reviewService.getLoadFailureCount());
+
+        reviewService.getReviewsForBook("9780306406157");
+        assertEquals(10, reviewService.getWeightedSize());
+        // The second book only displaces the first once it was asked for more often.
+        reviewService.getReviewsForBook("9781861978769");
+        assertEquals(10, reviewService.getWeightedSize());
+        reviewService.getReviewsForBook("9781861978769");
+        assertEquals(12, reviewService.getWeightedSize());
+        assertEquals(1, reviewService.getEvictionCount());
+    }
+
+    @Test
+    public void givenConcurrentMissesOnOneBook_whenGetReviewsForBook_thenFetchOnceForAll() throws Exception {
+        CachingReviewService reviewService = new CachingReviewService(mockReviewService, 1024, 1, TimeUnit.HOURS);
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockReviewService.getReviewsForBook("9789295055025")).thenAnswer(invocation -> {
+            fetchStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList("great");
+        });
+        AtomicReference<List<String>> first = new AtomicReference<>();
+        AtomicReference<List<String>> second = new AtomicReference<>();
+        Thread fetching = new Thread(() -> first.set(reviewService.getReviewsForBook("9789295055025")));
+        Thread waiting = new Thread(() -> second.set(reviewService.getReviewsForBook("978-92-95055-02-5")));
+
+        fetching.start();
+        assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+        waiting.start();
+        // Release the fetch only once the second miss waits for it.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiting.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        fetching.join(5000);
+        waiting.join(5000);
+
+        assertEquals(Collections.singletonList("great"), first.get());
+        assertEquals(Collections.singletonList("great"), second.get());
+        verify(mockReviewService, times(1)).getReviewsForBook(anyString());
+        assertEquals(2, reviewService.getMissCount());
+        assertEquals(1, reviewService.getLoadCount());
+    }
+}
@@ -0,0 +1,162 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.KeyHashing;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestCompactDatabaseService {
+
+    CompactDatabaseService databaseService;
+
+    @BeforeEach
+    public void init() {
+        // The smallest table, four slots, so that keys collide and the table resizes early.
+        databaseService = new CompactDatabaseService(0);
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mock(NotificationService.class)));
+    }
+
+    @Test
+    public void givenBooksHashingToTheSameSlot_whenGetBookByISBN_thenProbeToEachOfThem() {
+        List<String> colliding = new ArrayList<>();
+        String absent = null;
+        for (int i = 0; absent == null; i++) {
+            String ISBN = isbn(i);
+            if ((KeyHashing.mix(IsbnCodec.pack(ISBN)) & 3) == 0) {
+                if (colliding.size() < 2) {
+                    colliding.add(ISBN);
+                } else {
+                    absent = ISBN;
+                }
+            }
+        }
+        for (String ISBN : colliding) {
+            databaseService.addBook(ISBN, new Book(ISBN, "title " + ISBN, "Mark Twain"));
+        }
+
+        for (String ISBN : colliding) {
+            assertEquals("title " + ISBN, databaseService.getBookByISBN(ISBN).getTitle());
+        }
+        assertNull(databaseService.getBookByISBN(absent));
+        assertEquals(LoanResult.BOOK_NOT_FOUND, databaseService.tryBorrow(absent, "123456789101"));
+        assertThrows(IllegalArgumentException.class,
+                () -> databaseService.addBook(colliding.get(1), new Book(colliding.get(1), "title", "author")));
+    }
+
+    @Test
+    public void givenManyBooksAndLoans_whenTheTableResizes_thenEveryBookAndLoanIsKept() {
+        for (int i = 0; i < 1000; i++) {
+            databaseService.addBook(isbn(i), new Book(isbn(i), "title " + i, "Mark Twain"));
+            if (i % 3 == 0) {
+                databaseService.borrowBook(isbn(i), "123456789101");
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            String id = String.format("%012d", i);
+            databaseService.registerUser(id, new User("name", id, mock(NotificationService.class)));
+        }
+
+        assertEquals(1000, databaseService.bookCount());
+        assertEquals(101, databaseService.userCount());
+        for (int i = 0; i < 1000; i++) {
+            Book book = databaseService.getBookByISBN(IsbnCodec.pack(isbn(i)));
+            assertEquals("title " + i, book.getTitle());
+            assertEquals(i % 3 == 0, book.isBorrowed());
+        }
+        assertNotNull(databaseService.getUserById(99L));
+    }
+
+    @Test
+    public void givenLongOverloads_whenBorrowAndReturnBook_thenBehaveLikeTheStringOverloads() {
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        long ISBN = 9789295055025L;
+
+        databaseService.borrowBook(ISBN, "123456789101");
+        assertTrue(databaseService.getBookByISBN(ISBN).isBorrowed());
+        assertEquals("9789295055025", databaseService.getBookByISBN(ISBN).getISBN());
+        assertThrows(BookAlreadyBorrowedException.class, () -> databaseService.borrowBook(ISBN, "123456789101"));
+        assertThrows(UserNotRegisteredException.class, () -> databaseService.borrowBook(ISBN, "109876543210"));
+        databaseService.returnBook(ISBN);
+        assertThrows(BookNotBorrowedException.class, () -> databaseService.returnBook(ISBN));
+        assertThrows(BookNotFoundException.class, () -> databaseService.returnBook(9780306406157L));
+        assertSame(databaseService.getUserById("123456789101"), databaseService.getUserById(123456789101L));
+    }
+
+    @Test
+    public void givenManyThreadsBorrowingAndReturningWhileTheTableResizes_whenTryBorrowAndTryReturn_thenEveryLoanIsCounted() throws Exception {
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger borrowed = new AtomicInteger();
+        AtomicInteger returned = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < 1000; j++) {
+                    if (thread == 0) {
+                        databaseService.addBook(isbn(j), new Book(isbn(j), "title", "Mark Twain"));
+                    }
+                    if (databaseService.tryBorrow("978-92-95055-02-5", "123456789101") == LoanResult.OK) {
+                        borrowed.incrementAndGet();
+                    }
+                    if (databaseService.tryReturn("9789295055025") == LoanResult.OK) {
+                        returned.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        boolean onLoan = databaseService.getBookByISBN("9789295055025").isBorrowed();
+        assertEquals(borrowed.get(), returned.get() + (onLoan ? 1 : 0));
+        assertEquals(1001, databaseService.bookCount());
+    }
+
+    @Test
+    public void givenStreamCreatedBeforeTheTableResizes_whenStreamBooks_thenStreamEveryEarlierBookOnce() {
+        for (int i = 0; i < 3; i++) {
+            databaseService.addBook(isbn(i), new Book(isbn(i), "title", "author"));
+        }
+        Stream<Book> books = databaseService.streamBooks();
+        for (int i = 3; i < 100; i++) {
+            databaseService.addBook(isbn(i), new Book(isbn(i), "title", "author"));
+        }
+
+        List<String> streamed = books.map(Book::getISBN).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList(isbn(0), isbn(1), isbn(2)), streamed);
+        assertEquals(1, databaseService.streamUsers().count());
+    }
+
+    @Test
+    public void givenTooLargeExpectedSize_whenConstruct_thenRaiseIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new CompactDatabaseService(Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new CompactDatabaseService(-1));
+    }
+
+    // The i-th ISBN-13 with the 978 prefix.
+    private static String isbn(int i) {
+        String prefix = String.format("978%09d", i);
+        return prefix + IsbnCodec.checkDigit(prefix);
+    }
+}
@@ -0,0 +1,128 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestConcurrentDatabaseService {
+
+    ConcurrentDatabaseService databaseService;
+    Book book;
+
+    @BeforeEach
+    public void init() {
+        databaseService = new ConcurrentDatabaseService();
+        book = new Book("978-92-95055-02-5", "title", "Mark Twain");
+        databaseService.addBook(book.getISBN(), book);
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mock(NotificationService.class)));
+    }
+
+    @Test
+    public void givenBookAddedWithHyphens_whenGetBookByISBNWithoutHyphens_thenReturnTheBook() {
+        assertSame(book, databaseService.getBookByISBN("9789295055025"));
+        assertSame(book, databaseService.getBookByISBN(9789295055025L));
+        assertNull(databaseService.getBookByISBN("978-92-95055-02-7"));
+    }
+
+    @Test
+    public void givenBookAlreadyInTheDataBase_whenAddBook_thenRaiseIllegalArgumentException() {
+        Exception testException = assertThrows(IllegalArgumentException.class, () -> {
+            databaseService.addBook("9789295055025", new Book("9789295055025", "title", "author"));
+        });
+        assertEquals("Book already exists.", testException.getMessage());
+    }
+
+    @Test
+    public void givenBorrowedBook_whenBorrowBookAgain_thenRaiseBookAlreadyBorrowedException() {
+        databaseService.borrowBook("978-92-95055-02-5", "123456789101");
+        assertThrows(BookAlreadyBorrowedException.class, () -> {
+            databaseService.borrowBook("9789295055025", "123456789101");
+        });
+        databaseService.returnBook("978-92-95055-02-5");
+        assertThrows(BookNotBorrowedException.class, () -> {
+            databaseService.returnBook("978-92-95055-02-5");
+        });
+    }
+
+    @Test
+    public void givenUnknownBookOrUser_whenBorrowBook_thenRaiseNotFoundExceptions() {
+        assertThrows(BookNotFoundException.class, () -> {
+            databaseService.borrowBook("978-0-306-40615-7", "123456789101");
+        });
+        assertThrows(UserNotRegisteredException.class, () -> {
+            databaseService.borrowBook("978-92-95055-02-5", "109876543210");
+        });
+    }
+
+    @Test
+    public void givenManyThreadsBorrowingTheSameBook_whenBorrowBook_thenExactlyOneSucceeds() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    databaseService.borrowBook("978-92-95055-02-5", "123456789101");
+                    succeeded.incrementAndGet();
+                } catch (BookAlreadyBorrowedException e) {
+                    // expected for all but one thread
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(1, succeeded.get());
+        assertEquals(1, databaseService.loanCount());
+    }
+
+    @Test
+    public void givenManyThreadsBorrowingAndReturningTheSameBook_whenTryBorrowAndTryReturn_thenTheBookMatchesTheLoanTable() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger borrowed = new AtomicInteger();
+        AtomicInteger returned = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < 1000; j++) {
+                    if (databaseService.tryBorrow("978-92-95055-02-5", "123456789101") == LoanResult.OK) {
+                        borrowed.incrementAndGet();
+                    }
+                    if (databaseService.tryReturn("9789295055025") == LoanResult.OK) {
+                        returned.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(borrowed.get(), returned.get() + databaseService.loanCount());
+        assertEquals(databaseService.loanCount() == 1, book.isBorrowed());
+        assertEquals(LoanResult.USER_NOT_REGISTERED, databaseService.tryBorrow("978-92-95055-02-5", "109876543210"));
+        assertEquals(LoanResult.BOOK_NOT_FOUND, databaseService.tryReturn("978-0-306-40615-7"));
+    }
+}
@@ -0,0 +1,139 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestIndexedDatabaseService {
+
+    ConcurrentDatabaseService store;
+    IndexedDatabaseService databaseService;
+    Book hobbit = new Book("978-0-306-40615-7", "The Hobbit", "J.R.R. Tolkien");
+    Book silmarillion = new Book("978-92-95055-02-5", "The Silmarillion", "J. R. R. Tolkien");
+    Book sawyer = new Book("978-1-86197-876-9", "The Adventures of Tom Sawyer", "Mark Twain");
+
+    @BeforeEach
+    public void init() {
+        store = new ConcurrentDatabaseService();
+        store.addBook(hobbit.getISBN(), hobbit);
+        databaseService = new IndexedDatabaseService(store, Collections.singletonList(hobbit));
+        databaseService.addBook(silmarillion.getISBN(), silmarillion);
+        databaseService.addBooks(Collections.singletonMap(sawyer.getISBN(), sawyer));
+    }
+
+    @Test
+    public void givenAuthorSpelledDifferently_whenGetBooksByAuthor_thenReturnEveryBookOfTheAuthor() {
+        assertEquals(Arrays.asList(hobbit, silmarillion), databaseService.getBooksByAuthor("j r r  TOLKIEN"));
+        assertEquals(Collections.singletonList(sawyer), databaseService.getBooksByAuthor("Mark Twain"));
+        assertTrue(databaseService.getBooksByAuthor("Lewis Carroll").isEmpty());
+    }
+
+    @Test
+    public void givenTitleWithDifferentCase_whenGetBooksByTitle_thenReturnTheBook() {
+        assertEquals(Collections.singletonList(hobbit), databaseService.getBooksByTitle("the hobbit"));
+        assertTrue(databaseService.getBooksByTitle("The Hobbit 2").isEmpty());
+    }
+
+    @Test
+    public void givenBookRejectedByTheDatabase_whenAddBook_thenItIsNotIndexed() {
+        Book duplicate = new Book("9789295055025", "Another Title", "Lewis Carroll");
+        assertThrows(IllegalArgumentException.class, () -> databaseService.addBook(duplicate.getISBN(), duplicate));
+        assertTrue(databaseService.getBooksByAuthor("Lewis Carroll").isEmpty());
+    }
+
+    @Test
+    public void givenIndexBehindAnotherDecorator_whenFindCatalogIndex_thenReturnTheIndex() {
+        assertSame(databaseService, CatalogIndex.find(new CachingDatabaseService(databaseService, 16)));
+        assertNull(CatalogIndex.find(new ConcurrentDatabaseService()));
+    }
+
+    @Test
+    public void givenBooksBorrowedAndReturned_whenGetBooksBorrowedBy_thenReturnTheBooksStillOnLoan() {
+        User user = new User("name", "123456789101", mock(NotificationService.class));
+        databaseService.registerUser(user.getId(), user);
+        assertEquals(LoanResult.OK, databaseService.tryBorrow("9780306406157", user.getId()));
+        databaseService.borrowBook(silmarillion.getISBN(), user.getId());
+        assertEquals(LoanResult.ALREADY_BORROWED, databaseService.tryBorrow(silmarillion.getISBN(), user.getId()));
+
+        assertEquals(Arrays.asList(hobbit, silmarillion), databaseService.getBooksBorrowedBy("123456789101"));
+        assertEquals(2, databaseService.getLoanCount("123456789101"));
+        assertSame(user, databaseService.getBorrower(silmarillion.getISBN()));
+
+        assertEquals(LoanResult.OK, databaseService.tryReturn(hobbit.getISBN()));
+        assertEquals(Collections.singletonList(silmarillion), databaseService.getBooksBorrowedBy("123456789101"));
+        assertNull(databaseService.getBorrower(hobbit.getISBN()));
+    }
+
+    @Test
+    public void givenPublisherPrefix_whenGetBooksByISBNPrefix_thenStreamThePublishersBooks() {
+        assertEquals(Collections.singletonList(hobbit),
+                databaseService.getBooksByISBNPrefix("978-0-306").collect(Collectors.toList()));
+        assertEquals(Arrays.asList(hobbit, sawyer),
+                databaseService.getBooksByISBNRange("978-0-306-40615-7", "978-1-86197-876-9").collect(Collectors.toList()));
+    }
+
+    @Test
+    public void givenBorrowedBook_whenCountAvailableBooks_thenItIsNotCountedUntilReturned() {
+        User user = new User("name", "123456789101", mock(NotificationService.class));
+        databaseService.registerUser(user.getId(), user);
+        assertEquals(3, databaseService.countAvailableBooks());
+
+        databaseService.tryBorrow(hobbit.getISBN(), user.getId());
+        assertEquals(2, databaseService.countAvailableBooks());
+        assertEquals(Collections.singletonList(silmarillion), databaseService.getAvailableBooksByAuthor("J.R.R. Tolkien"));
+
+        databaseService.returnBook(hobbit.getISBN());
+        assertEquals(3, databaseService.countAvailableBooks());
+        assertEquals(Arrays.asList(hobbit, silmarillion), databaseService.getAvailableBooksByAuthor("J.R.R. Tolkien"));
+        assertEquals(Collections.singletonList(sawyer), databaseService.getAvailableBooksByAuthor("mark  TWAIN"));
+        assertTrue(databaseService.getAvailableBooksByAuthor("Lewis Carroll").isEmpty());
+    }
+
+    @Test
+    public void givenIndexedBooks_whenStreamBooks_thenStreamThemInOrderOfISBN() {
+        assertEquals(Arrays.asList(hobbit, sawyer, silmarillion), databaseService.streamBooks().collect(Collectors.toList()));
+        assertEquals(3, databaseService.streamBooks().parallel().filter(book -> !book.isBorrowed()).count());
+    }
+
+    @Test
+    public void givenConcurrentBorrowsAndReturns_whenDone_thenIndexesAgreeWithTheDatabase() throws Exception {
+        User user = new User("name", "123456789101", mock(NotificationService.class));
+        databaseService.registerUser(user.getId(), user);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] workers = new Future<?>[4];
+            for (int i = 0; i < workers.length; i++) {
+                boolean borrower = i % 2 == 0;
+                workers[i] = executor.submit(() -> {
+                    for (int round = 0; round < 2_000; round++) {
+                        if (borrower) {
+                            databaseService.tryBorrow(hobbit.getISBN(), user.getId());
+                        } else {
+                            databaseService.tryReturn(hobbit.getISBN());
+                        }
+                    }
+                });
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        boolean borrowed = store.getBookByISBN(hobbit.getISBN()).isBorrowed();
+        assertEquals(borrowed ? user : null, databaseService.getBorrower(hobbit.getISBN()));
+        assertEquals(borrowed ? 2 : 3, databaseService.countAvailableBooks());
+        assertEquals(borrowed ? 1 : 0, databaseService.getLoanCount(user.getId()));
+    }
+}
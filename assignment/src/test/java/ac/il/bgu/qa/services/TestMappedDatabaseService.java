@@ -0,0 +1,79 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestMappedDatabaseService {
+
+    @TempDir
+    Path directory;
+
+    NotificationService mockNotificationService = mock(NotificationService.class);
+
+    @Test
+    public void givenBooksUsersAndLoans_whenDatabaseIsReopened_thenEverythingIsStillThere() {
+        MappedDatabaseService databaseService = new MappedDatabaseService(directory, 100, 10, id -> mockNotificationService);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        databaseService.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "\u0434\u0440\u0443\u0433\u043e\u0435", "Lev Tolstoy"));
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mockNotificationService));
+        databaseService.borrowBook("978-92-95055-02-5", "123456789101");
+        databaseService.close();
+
+        MappedDatabaseService reopened = new MappedDatabaseService(directory, 1, 1, id -> mockNotificationService);
+        Book book = reopened.getBookByISBN("9789295055025");
+        assertEquals("title", book.getTitle());
+        assertEquals("Mark Twain", book.getAuthor());
+        assertTrue(book.isBorrowed());
+        assertEquals("\u0434\u0440\u0443\u0433\u043e\u0435", reopened.getBookByISBN("978-0-306-40615-7").getTitle());
+        assertFalse(reopened.getBookByISBN("978-0-306-40615-7").isBorrowed());
+
+        User user = reopened.getUserById("123456789101");
+        assertEquals("name", user.getName());
+        assertSame(mockNotificationService, user.getNotificationService());
+        assertEquals(2, reopened.bookCount());
+        assertEquals(1, reopened.userCount());
+
+        reopened.returnBook("978-92-95055-02-5");
+        assertThrows(BookNotBorrowedException.class, () -> reopened.returnBook("978-92-95055-02-5"));
+        reopened.close();
+    }
+
+    @Test
+    public void givenFullDatabase_whenAddBook_thenRaiseIllegalStateException() {
+        MappedDatabaseService databaseService = new MappedDatabaseService(directory, 1, 1, id -> mockNotificationService);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        assertThrows(IllegalStateException.class, () -> {
+            databaseService.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "title", "Mark Twain"));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        });
+        databaseService.close();
+    }
+
+    @Test
+    public void givenBooksAndUsers_whenStreamBooksAndUsers_thenStreamEveryRecord() {
+        MappedDatabaseService databaseService = new MappedDatabaseService(directory, 100, 10, id -> mockNotificationService);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        databaseService.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "other", "Lev Tolstoy"));
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mockNotificationService));
+
+        assertEquals(new HashSet<>(Arrays.asList("9789295055025", "9780306406157")),
+                databaseService.streamBooks().parallel().map(Book::getISBN).collect(Collectors.toSet()));
+        assertEquals(Collections.singletonList("name"),
+                databaseService.streamUsers().map(User::getName).collect(Collectors.toList()));
+        databaseService.close();
+    }
+}
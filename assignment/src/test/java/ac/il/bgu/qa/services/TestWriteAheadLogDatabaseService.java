@@ -0,0 +1,145 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnCodec;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestWriteAheadLogDatabaseService {
+
+    @TempDir
+    Path directory;
+
+    NotificationService mockNotificationService = mock(NotificationService.class);
+
+    WriteAheadLogDatabaseService open(DurabilityMode mode) {
+        return new WriteAheadLogDatabaseService(directory.resolve("library.wal"),
+                new ConcurrentDatabaseService(), mode, id -> mockNotificationService);
+    }
+
+    @Test
+    public void givenLoggedChanges_whenLogIsReplayed_thenStateIsRebuilt() {
+        WriteAheadLogDatabaseService databaseService = open(DurabilityMode.SYNC);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        databaseService.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "title", "Mark Twain"));
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mockNotificationService));
+        databaseService.borrowBook("978-92-95055-02-5", "123456789101");
+        databaseService.borrowBook("978-0-306-40615-7", "123456789101");
+        databaseService.returnBook("978-0-306-40615-7");
+        assertThrows(BookAlreadyBorrowedException.class, () -> {
+            databaseService.borrowBook("978-92-95055-02-5", "123456789101");
+        });
+        databaseService.close();
+
+        WriteAheadLogDatabaseService replayed = open(DurabilityMode.GROUP);
+        assertTrue(replayed.getBookByISBN("978-92-95055-02-5").isBorrowed());
+        assertFalse(replayed.getBookByISBN("978-0-306-40615-7").isBorrowed());
+        assertEquals("name", replayed.getUserById("123456789101").getName());
+        assertThrows(BookAlreadyBorrowedException.class, () -> {
+            replayed.borrowBook("978-92-95055-02-5", "123456789101");
+        });
+        replayed.close();
+    }
+
+    @Test
+    public void givenRejectedAndAcceptedLoans_whenLogIsReplayed_thenTheBookFlagMatchesTheLiveState() {
+        WriteAheadLogDatabaseService databaseService = open(DurabilityMode.SYNC);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        databaseService.registerUser("123456789101", new User("name", "123456789101", mockNotificationService));
+        long size = databaseService.logSize();
+        assertEquals(LoanResult.USER_NOT_REGISTERED, databaseService.tryBorrow("978-92-95055-02-5", "109876543210"));
+        assertEquals(LoanResult.NOT_BORROWED, databaseService.tryReturn("978-92-95055-02-5"));
+        // Rejected loans are not logged.
+        assertEquals(size, databaseService.logSize());
+        assertFalse(databaseService.getBookByISBN("978-92-95055-02-5").isBorrowed());
+        assertEquals(LoanResult.OK, databaseService.tryBorrow("978-92-95055-02-5", "123456789101"));
+        size = databaseService.logSize();
+        assertEquals(LoanResult.ALREADY_BORROWED, databaseService.tryBorrow("978-92-95055-02-5", "123456789101"));
+        assertEquals(size, databaseService.logSize());
+        assertEquals(LoanResult.OK, databaseService.tryReturn("978-92-95055-02-5"));
+        assertEquals(LoanResult.NOT_BORROWED, databaseService.tryReturn("978-92-95055-02-5"));
+        assertEquals(LoanResult.OK, databaseService.tryBorrow("978-92-95055-02-5", "123456789101"));
+        assertTrue(databaseService.getBookByISBN("978-92-95055-02-5").isBorrowed());
+        databaseService.close();
+
+        WriteAheadLogDatabaseService replayed = open(DurabilityMode.SYNC);
+        assertTrue(replayed.getBookByISBN("978-92-95055-02-5").isBorrowed());
+        assertEquals(LoanResult.ALREADY_BORROWED, replayed.tryBorrow("978-92-95055-02-5", "123456789101"));
+        assertEquals(LoanResult.OK, replayed.tryReturn("978-92-95055-02-5"));
+        assertFalse(replayed.getBookByISBN("978-92-95055-02-5").isBorrowed());
+        replayed.close();
+    }
+
+    @Test
+    public void givenTornRecordAtTheEndOfTheLog_whenLogIsReplayed_thenItIsDiscarded() throws Exception {
+        WriteAheadLogDatabaseService databaseService = open(DurabilityMode.SYNC);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        long complete = databaseService.logSize();
+        databaseService.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "title", "Mark Twain"));
+        databaseService.close();
+        try (FileChannel channel = FileChannel.open(directory.resolve("library.wal"), StandardOpenOption.WRITE)) {
+            channel.truncate(complete + 5);
+        }
+
+        WriteAheadLogDatabaseService replayed = open(DurabilityMode.SYNC);
+        assertNotNull(replayed.getBookByISBN("978-92-95055-02-5"));
+        assertNull(replayed.getBookByISBN("978-0-306-40615-7"));
+        assertEquals(complete, replayed.logSize());
+        replayed.close();
+    }
+
+    @Test
+    public void givenCompleteRecordOfUnknownType_whenLogIsReplayed_thenOpeningFails() throws Exception {
+        WriteAheadLogDatabaseService databaseService = open(DurabilityMode.SYNC);
+        databaseService.addBook("978-92-95055-02-5", new Book("978-92-95055-02-5", "title", "Mark Twain"));
+        long end = databaseService.logSize();
+        databaseService.close();
+        CRC32 crc = new CRC32();
+        crc.update(new byte[]{99});
+        ByteBuffer record = ByteBuffer.allocate(9).putInt(1).putInt((int) crc.getValue()).put((byte) 99);
+        record.flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve("library.wal"), StandardOpenOption.WRITE)) {
+            channel.write(record, end);
+        }
+
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> open(DurabilityMode.SYNC));
+        assertEquals("Unknown write-ahead log record type 99.", e.getCause().getMessage());
+    }
+
+    @Test
+    public void givenConcurrentWritersInGroupMode_whenTheyAddBooks_thenEveryBookIsReplayed() throws Exception {
+        WriteAheadLogDatabaseService databaseService = open(DurabilityMode.GROUP);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String digits = String.format("978%09d", i);
+            String ISBN = digits + IsbnCodec.checkDigit(digits);
+            futures.add(executor.submit(() -> databaseService.addBook(ISBN, new Book(ISBN, "title", "Mark Twain"))));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        databaseService.close();
+
+        ConcurrentDatabaseService rebuilt = new ConcurrentDatabaseService();
+        new WriteAheadLogDatabaseService(directory.resolve("library.wal"), rebuilt,
+                DurabilityMode.ASYNC, id -> mockNotificationService).close();
+        assertEquals(200, rebuilt.bookCount());
+    }
+}